@@ -3,7 +3,9 @@ CREATE EXTENSION IF NOT EXISTS vector;
 CREATE TABLE public.chat (
                                 id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
                                 created_at TIMESTAMP(6),
-                                title      VARCHAR(255)
+                                title      VARCHAR(255),
+                                summary    TEXT,
+                                summary_entry_id BIGINT
 );
 
 ALTER TABLE public.chat OWNER TO postgres;
@@ -23,6 +25,10 @@ CREATE TABLE public.chat_entry (
 
 ALTER TABLE public.chat_entry OWNER TO postgres;
 
+-- Chat memory reads the latest entries of one chat
+CREATE INDEX IF NOT EXISTS idx_chat_entry_chat_id_created_at
+    ON public.chat_entry (chat_id, created_at DESC);
+
 
 
 CREATE TABLE IF NOT EXISTS loaded_document (
@@ -41,6 +47,54 @@ CREATE INDEX IF NOT EXISTS idx_loaded_documents_filename
     ON loaded_document(filename);
 
 
+CREATE TABLE IF NOT EXISTS loaded_document_chunk (
+    document_id INTEGER NOT NULL REFERENCES loaded_document (id) ON DELETE CASCADE,
+    chunk_index INTEGER NOT NULL,
+    chunk_id    VARCHAR(255) NOT NULL,
+    chunk_hash  VARCHAR(64),
+
+    PRIMARY KEY (document_id, chunk_index)
+    );
+
+
+CREATE TABLE IF NOT EXISTS ingestion_job (
+    id              BIGSERIAL PRIMARY KEY,
+    user_id         BIGINT NOT NULL,
+    status          VARCHAR(20) NOT NULL,
+    total_files     INTEGER NOT NULL,
+    processed_files INTEGER NOT NULL DEFAULT 0,
+    error           TEXT,
+    created_at      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+    );
+
+CREATE INDEX IF NOT EXISTS idx_ingestion_job_status
+    ON ingestion_job (status);
+
+CREATE TABLE IF NOT EXISTS ingestion_job_file (
+    id           BIGSERIAL PRIMARY KEY,
+    job_id       BIGINT NOT NULL REFERENCES ingestion_job (id) ON DELETE CASCADE,
+    file_index   INTEGER NOT NULL,
+    filename     VARCHAR(255) NOT NULL,
+    spool_path   VARCHAR(1024) NOT NULL,
+    ingestion_id VARCHAR(36) NOT NULL,
+    status       VARCHAR(20) NOT NULL,
+    windows_done INTEGER NOT NULL DEFAULT 0,
+
+    CONSTRAINT unique_ingestion_job_file UNIQUE (job_id, file_index)
+    );
+
+
+CREATE TABLE IF NOT EXISTS knowledge_base_file (
+    path            VARCHAR(1024) PRIMARY KEY,
+    size            BIGINT NOT NULL,
+    modified_millis BIGINT NOT NULL,
+    -- Job that loads this version; the file counts as loaded once the job completed
+    job_id          BIGINT REFERENCES ingestion_job (id),
+    loaded_at       TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+    );
+
+
 CREATE TABLE IF NOT EXISTS users (
                        id BIGSERIAL PRIMARY KEY,
                        username VARCHAR(30) NOT NULL UNIQUE,
@@ -64,13 +118,30 @@ CREATE TABLE IF NOT EXISTS refresh_token (
 
 
 CREATE TABLE IF NOT EXISTS vector_store (
-    id        VARCHAR(255) PRIMARY KEY,
-    content   TEXT,
-    metadata  JSON,
-    embedding VECTOR(1024)
+    id          VARCHAR(255) PRIMARY KEY,
+    content     TEXT,
+    metadata    JSON,
+    embedding   VECTOR(1024),
+    content_tsv TSVECTOR GENERATED ALWAYS AS (to_tsvector('simple', COALESCE(content, ''))) STORED,
+    user_id     BIGINT GENERATED ALWAYS AS ((metadata->>'user_id')::BIGINT) STORED,
+    chunk_hash  VARCHAR(64) GENERATED ALWAYS AS (metadata->>'chunk_hash') STORED,
+    -- Written by an ingestion whose file is not complete yet; hidden from retrieval
+    pending     BOOLEAN NOT NULL DEFAULT FALSE
     );
 
 
 CREATE INDEX IF NOT EXISTS vector_store_hnsw_index
     ON vector_store USING hnsw (embedding vector_cosine_ops);
 
+CREATE INDEX IF NOT EXISTS vector_store_content_tsv_index
+    ON vector_store USING gin (content_tsv);
+
+CREATE INDEX IF NOT EXISTS vector_store_user_id_index
+    ON vector_store (user_id);
+
+CREATE INDEX IF NOT EXISTS vector_store_chunk_hash_index
+    ON vector_store (chunk_hash);
+
+CREATE INDEX IF NOT EXISTS vector_store_pending_ingestion_index
+    ON vector_store ((metadata->>'ingestion_id')) WHERE pending;
+
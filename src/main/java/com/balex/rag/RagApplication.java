@@ -1,11 +1,27 @@
 package com.balex.rag;
 
 import com.balex.rag.advisors.expansion.ExpansionQueryAdvisor;
+import com.balex.rag.advisors.rag.BM25RerankEngine;
+import com.balex.rag.advisors.rag.Bm25CorpusIndex;
 import com.balex.rag.advisors.rag.RagAdvisor;
+import com.balex.rag.cache.RetrievalCache;
+import com.balex.rag.config.RagChatMemoryProperties;
+import com.balex.rag.config.RagChatStreamProperties;
 import com.balex.rag.config.RagDefaultsProperties;
+import com.balex.rag.config.RagEmbeddingCacheProperties;
 import com.balex.rag.config.RagExpansionProperties;
+import com.balex.rag.config.RagIngestionProperties;
+import com.balex.rag.config.RagKnowledgeBaseProperties;
+import com.balex.rag.config.RagRetrievalCacheProperties;
+import com.balex.rag.config.RagSecurityProperties;
+import com.balex.rag.config.RagTaskExecutorProperties;
+import com.balex.rag.config.RagVectorIndexProperties;
+import com.balex.rag.repo.ChatEntryRepository;
 import com.balex.rag.repo.ChatRepository;
+import com.balex.rag.repo.VectorStoreRepository;
+import com.balex.rag.service.ChatSummarizer;
 import com.balex.rag.service.PostgresChatMemory;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
@@ -14,38 +30,63 @@ import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.ollama.api.OllamaOptions;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @SpringBootApplication
 @RequiredArgsConstructor
-@EnableConfigurationProperties({RagDefaultsProperties.class, RagExpansionProperties.class})
+@EnableConfigurationProperties({RagDefaultsProperties.class, RagExpansionProperties.class,
+		RagVectorIndexProperties.class, RagEmbeddingCacheProperties.class,
+		RagRetrievalCacheProperties.class, RagIngestionProperties.class, RagTaskExecutorProperties.class,
+		RagKnowledgeBaseProperties.class, RagChatMemoryProperties.class, RagChatStreamProperties.class,
+		RagSecurityProperties.class})
 public class RagApplication {
 
-	private final ChatRepository chatRepository;
-	private final VectorStore vectorStore;
+	private final EmbeddingModel embeddingModel;
 	private final ChatModel chatModel;
 	private final RagExpansionProperties expansionProperties;
+	private final Bm25CorpusIndex corpusIndex;
+	private final VectorStoreRepository vectorStoreRepository;
+	private final RetrievalCache retrievalCache;
+	private final MeterRegistry meterRegistry;
 
 	@Bean
 	public ChatClient chatClient(
 			ChatClient.Builder builder,
+			ChatMemory chatMemory,
 			@Value("${rag.rerank-fetch-multiplier}") int rerankFetchMultiplier,
-			RagDefaultsProperties ragDefaults) {
+			RagDefaultsProperties ragDefaults,
+			ExecutorService ragRetrievalExecutor,
+			ExecutorService ragExpansionExecutor) {
 		return builder
 				.defaultAdvisors(
-						getHistoryAdvisor(0),
-						ExpansionQueryAdvisor.builder(chatModel, expansionProperties).order(1).build(),
+						getHistoryAdvisor(chatMemory, 0),
+						ExpansionQueryAdvisor.builder(chatModel, expansionProperties, meterRegistry)
+								.expansionExecutor(ragExpansionExecutor)
+								.order(1).build(),
 						SimpleLoggerAdvisor.builder().order(2).build(),
-						RagAdvisor.build(vectorStore)
+						RagAdvisor.build(vectorStoreRepository)
+								.embeddingModel(embeddingModel)
+								.rerankEngine(BM25RerankEngine.builder().corpusIndex(corpusIndex).build())
+								.retrievalCache(retrievalCache)
+								.retrievalExecutor(ragRetrievalExecutor)
 								.rerankFetchMultiplier(rerankFetchMultiplier)
 								.searchTopK(ragDefaults.searchTopK())
 								.similarityThreshold(ragDefaults.similarityThreshold())
+								.hybridSearch(ragDefaults.hybridSearch())
+								.rrfK(ragDefaults.rrfK())
+								.searchBreadth(ragDefaults.searchBreadth())
+								.speculativeGrace(expansionProperties.speculativeGrace())
 								.order(3).build(),
 						SimpleLoggerAdvisor.builder().order(4).build()
 				)
@@ -56,14 +97,49 @@ public class RagApplication {
 				.build();
 	}
 
-	private Advisor getHistoryAdvisor(int order) {
-		return MessageChatMemoryAdvisor.builder(getChatMemory()).order(order).build();
+	// Closed on shutdown, which waits for in-flight lexical searches
+	@Bean(destroyMethod = "close")
+	public ExecutorService ragRetrievalExecutor() {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rag-retrieval-", 0).factory());
+	}
+
+	// Closed on shutdown, which waits for expansion calls still in flight
+	@Bean(destroyMethod = "close")
+	public ExecutorService ragExpansionExecutor() {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rag-expansion-", 0).factory());
+	}
+
+	private Advisor getHistoryAdvisor(ChatMemory chatMemory, int order) {
+		return MessageChatMemoryAdvisor.builder(chatMemory).order(order).build();
 	}
 
-	private ChatMemory getChatMemory() {
+	@Bean
+	public ChatMemory chatMemory(ChatEntryRepository chatEntryRepository,
+								 ChatRepository chatRepository,
+								 RagChatMemoryProperties properties) {
+		TokenCountEstimator tokenEstimator = new JTokkitTokenCountEstimator();
+		ChatSummarizer summarizer = !properties.summaryEnabled() ? null : ChatSummarizer.builder()
+				.chatModel(chatModel)
+				.chatRepository(chatRepository)
+				.chatEntryRepository(chatEntryRepository)
+				.tokenEstimator(tokenEstimator)
+				.maxMessages(properties.maxMessages())
+				.tokenBudget(properties.tokenBudget())
+				.summaryMaxTokens(properties.summaryMaxTokens())
+				.batchSize(properties.summaryBatchSize())
+				.build();
+
 		return PostgresChatMemory.builder()
-				.maxMessages(8)
-				.chatMemoryRepository(chatRepository)
+				.maxMessages(properties.maxMessages())
+				.tokenBudget(properties.tokenBudget())
+				.maxConversations(properties.maxConversations())
+				.ttl(properties.ttl())
+				.chatRepository(chatRepository)
+				.chatEntryRepository(chatEntryRepository)
+				.tokenEstimator(tokenEstimator)
+				.summarizer(summarizer)
+				.summaryMinEvicted(properties.summaryMinEvicted())
+				.meterRegistry(meterRegistry)
 				.build();
 	}
 
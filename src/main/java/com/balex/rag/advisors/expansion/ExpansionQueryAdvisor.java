@@ -1,8 +1,13 @@
 package com.balex.rag.advisors.expansion;
 
+import com.balex.rag.cache.LruCache;
+import com.balex.rag.cache.LruCacheMetrics;
+import com.balex.rag.cache.QueryNormalizer;
 import com.balex.rag.config.RagExpansionProperties;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.ChatClientRequest;
 import org.springframework.ai.chat.client.ChatClientResponse;
@@ -12,8 +17,15 @@ import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.ollama.api.OllamaOptions;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+@Slf4j
 @Builder
 public class ExpansionQueryAdvisor implements BaseAdvisor {
 
@@ -43,10 +55,40 @@ public class ExpansionQueryAdvisor implements BaseAdvisor {
     public static final String ENRICHED_QUESTION = "ENRICHED_QUESTION";
     public static final String ORIGINAL_QUESTION = "ORIGINAL_QUESTION";
     public static final String EXPANSION_RATIO = "EXPANSION_RATIO";
+    // PendingExpansion, set instead of ENRICHED_QUESTION in speculative mode when the LLM has to be asked
+    public static final String PENDING_EXPANSION = "PENDING_EXPANSION";
+
+    public static final String CACHE_NAME = "query-expansions";
 
     private ChatClient chatClient;
 
+    // Null disables caching
+    private LruCache<String, String> expansionCache;
+    private ExpansionRatioStats ratioStats;
+    private int skipMinWords;
+    private double skipMaxRatio;
+    private int skipMinSamples;
+    private Duration timeout;
+    // Hands the expansion on as a future so retrieval of the raw question can start meanwhile
+    private boolean speculative;
+
+    // The expansion call blocks on the LLM; a late answer is still cached for the next ask
+    private final ExecutorService expansionExecutor;
+
     public static ExpansionQueryAdvisorBuilder builder(ChatModel chatModel, RagExpansionProperties props) {
+        return builder(chatModel, props, null);
+    }
+
+    public static ExpansionQueryAdvisorBuilder builder(ChatModel chatModel, RagExpansionProperties props,
+                                                       MeterRegistry meterRegistry) {
+        LruCache<String, String> cache = null;
+        if (props.cacheEnabled()) {
+            cache = new LruCache<>(props.cacheMaxSize(), props.cacheTtl());
+            if (meterRegistry != null) {
+                LruCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+            }
+        }
+
         return new ExpansionQueryAdvisorBuilder().chatClient(ChatClient.builder(chatModel)
                 .defaultOptions(OllamaOptions.builder()
                         .temperature(props.temperature())
@@ -54,7 +96,14 @@ public class ExpansionQueryAdvisor implements BaseAdvisor {
                         .topP(props.topP())
                         .repeatPenalty(props.repeatPenalty())
                         .build())
-                .build());
+                .build())
+                .expansionCache(cache)
+                .ratioStats(new ExpansionRatioStats(props.skipRatioBuckets()))
+                .skipMinWords(props.skipMinWords())
+                .skipMaxRatio(props.skipMaxRatio())
+                .skipMinSamples(props.skipMinSamples())
+                .timeout(props.timeout())
+                .speculative(props.speculative());
     }
 
     @Getter
@@ -64,21 +113,120 @@ public class ExpansionQueryAdvisor implements BaseAdvisor {
     public ChatClientRequest before(ChatClientRequest chatClientRequest, AdvisorChain advisorChain) {
 
         String userQuestion = chatClientRequest.prompt().getUserMessage().getText();
-        String enrichedQuestion = chatClient
-                .prompt()
-                .user(template.render(Map.of("question", userQuestion)))
-                .call()
-                .content();
+        String enrichedQuestion = expandWithoutLlm(userQuestion);
 
-        double ratio = enrichedQuestion.length() / (double) userQuestion.length();
+        if (enrichedQuestion == null && speculative) {
+            // No LLM call until retrieval missed its cache; retrieval reports the result back
+            return chatClientRequest.mutate()
+                    .context(ORIGINAL_QUESTION, userQuestion)
+                    .context(PENDING_EXPANSION, new PendingExpansion(() -> callLlm(userQuestion)))
+                    .build();
+        }
+
+        if (enrichedQuestion == null) {
+            enrichedQuestion = expandWithLlm(userQuestion);
+        }
 
         return chatClientRequest.mutate()
                 .context(ORIGINAL_QUESTION, userQuestion)
                 .context(ENRICHED_QUESTION, enrichedQuestion)
-                .context(EXPANSION_RATIO, ratio)
+                .context(EXPANSION_RATIO, expansionRatio(userQuestion, enrichedQuestion))
                 .build();
     }
 
+    public static double expansionRatio(String userQuestion, String enrichedQuestion) {
+        return enrichedQuestion.length() / (double) userQuestion.length();
+    }
+
+    /**
+     * Returns the cached expansion, or the question itself when expansion is skipped;
+     * null when the LLM has to be asked.
+     */
+    private String expandWithoutLlm(String userQuestion) {
+        String key = QueryNormalizer.normalize(userQuestion);
+        if (key.isEmpty()) {
+            return userQuestion;
+        }
+
+        if (expansionCache != null) {
+            String cached = expansionCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        int words = words(key);
+        if (shouldSkip(words)) {
+            log.debug("Skipping expansion for a {}-word question", words);
+            return userQuestion;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the expanded question, or the question itself when expansion fails or does
+     * not finish within the time budget.
+     */
+    private String expandWithLlm(String userQuestion) {
+        CompletableFuture<String> expansion = callLlm(userQuestion);
+        try {
+            return timeout == null || timeout.isZero() || timeout.isNegative()
+                    ? expansion.get()
+                    : expansion.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.debug("Expansion exceeded {} ms, searching with the raw question", timeout.toMillis());
+            return userQuestion;
+        } catch (ExecutionException e) {
+            log.warn("Query expansion failed, searching with the raw question", e.getCause());
+            return userQuestion;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return userQuestion;
+        }
+    }
+
+    /**
+     * Asks the LLM in the background. The answer is cached and feeds the ratio statistics
+     * even when nobody waits for it anymore; a blank answer yields the question itself.
+     */
+    private CompletableFuture<String> callLlm(String userQuestion) {
+        String key = QueryNormalizer.normalize(userQuestion);
+        int words = words(key);
+        return CompletableFuture
+                .supplyAsync(() -> askLlm(userQuestion), expansionExecutor)
+                .whenComplete((enriched, error) -> {
+                    if (enriched == null || enriched.isBlank()) {
+                        return;
+                    }
+                    if (expansionCache != null) {
+                        expansionCache.put(key, enriched);
+                    }
+                    if (ratioStats != null) {
+                        ratioStats.record(words, expansionRatio(userQuestion, enriched));
+                    }
+                })
+                .thenApply(enriched -> enriched == null || enriched.isBlank() ? userQuestion : enriched);
+    }
+
+    private static int words(String normalizedQuestion) {
+        return normalizedQuestion.split(" ").length;
+    }
+
+    private boolean shouldSkip(int words) {
+        if (skipMinWords > 0 && words >= skipMinWords) {
+            return true;
+        }
+        return ratioStats != null && ratioStats.shouldSkip(words, skipMaxRatio, skipMinSamples);
+    }
+
+    private String askLlm(String userQuestion) {
+        return chatClient
+                .prompt()
+                .user(template.render(Map.of("question", userQuestion)))
+                .call()
+                .content();
+    }
+
     @Override
     public ChatClientResponse after(ChatClientResponse chatClientResponse, AdvisorChain advisorChain) {
 
@@ -0,0 +1,46 @@
+package com.balex.rag.advisors.expansion;
+
+/**
+ * Moving average of {@code EXPANSION_RATIO} per question length in words.
+ *
+ * When expansion of questions of some length has kept returning roughly the same text,
+ * the LLM round trip is not worth its latency for that length.
+ */
+final class ExpansionRatioStats {
+
+    private static final double SMOOTHING = 0.1;
+    // Every n-th skipped question is still expanded, so the average can recover
+    private static final int PROBE_INTERVAL = 10;
+
+    private final double[] averageRatio;
+    private final int[] samples;
+    private final int[] skipped;
+
+    ExpansionRatioStats(int buckets) {
+        this.averageRatio = new double[Math.max(1, buckets)];
+        this.samples = new int[averageRatio.length];
+        this.skipped = new int[averageRatio.length];
+    }
+
+    synchronized void record(int words, double ratio) {
+        int bucket = bucket(words);
+        averageRatio[bucket] = samples[bucket] == 0
+                ? ratio
+                : averageRatio[bucket] + SMOOTHING * (ratio - averageRatio[bucket]);
+        if (samples[bucket] < Integer.MAX_VALUE) {
+            samples[bucket]++;
+        }
+    }
+
+    synchronized boolean shouldSkip(int words, double maxRatio, int minSamples) {
+        int bucket = bucket(words);
+        if (samples[bucket] < minSamples || averageRatio[bucket] >= maxRatio) {
+            return false;
+        }
+        return ++skipped[bucket] % PROBE_INTERVAL != 0;
+    }
+
+    private int bucket(int words) {
+        return Math.min(Math.max(words, 0), averageRatio.length - 1);
+    }
+}
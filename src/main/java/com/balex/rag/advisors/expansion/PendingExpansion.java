@@ -0,0 +1,40 @@
+package com.balex.rag.advisors.expansion;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Query expansion handed to retrieval in speculative mode. The LLM call only starts when
+ * retrieval asks for it, so a retrieval cache hit costs no expansion.
+ */
+public final class PendingExpansion {
+
+    private final Supplier<CompletableFuture<String>> expansion;
+    private CompletableFuture<String> started;
+
+    PendingExpansion(Supplier<CompletableFuture<String>> expansion) {
+        this.expansion = expansion;
+    }
+
+    /**
+     * Starts the expansion unless it is running already.
+     *
+     * @return the expanded question; completes exceptionally when the LLM call failed
+     */
+    public synchronized CompletableFuture<String> start() {
+        if (started == null) {
+            started = expansion.get();
+        }
+        return started;
+    }
+
+    /**
+     * @return the expanded question if the expansion was started and has succeeded, else null
+     */
+    public synchronized String completed() {
+        if (started == null || !started.isDone() || started.isCompletedExceptionally()) {
+            return null;
+        }
+        return started.getNow(null);
+    }
+}
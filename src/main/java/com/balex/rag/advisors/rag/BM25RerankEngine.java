@@ -1,29 +1,20 @@
 package com.balex.rag.advisors.rag;
 
-import com.balex.rag.model.exception.RerankException;
-import com.github.pemistahl.lingua.api.Language;
-import com.github.pemistahl.lingua.api.LanguageDetector;
-import com.github.pemistahl.lingua.api.LanguageDetectorBuilder;
 import lombok.Builder;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.en.EnglishAnalyzer;
-import org.apache.lucene.analysis.ru.RussianAnalyzer;
-import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.springframework.ai.document.Document;
 
-import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
-
-import static com.balex.rag.model.constants.ApiErrorMessage.TOKENIZATION_ERROR;
 
+/**
+ * Stateless apart from its configuration, so one instance is shared by all chat requests.
+ *
+ * Query terms are interned to int ids and candidate term frequencies are laid out in one
+ * primitive array, so every candidate is scored exactly once in O(query terms) and the
+ * best {@code limit} are picked with a bounded heap instead of sorting the whole list.
+ */
 @Builder
 public class BM25RerankEngine {
-    @Builder.Default
-    private static final LanguageDetector languageDetector = LanguageDetectorBuilder
-            .fromLanguages(Language.ENGLISH, Language.RUSSIAN)
-            .build();
 
     // BM25 parameters
     @Builder.Default
@@ -31,130 +22,177 @@ public class BM25RerankEngine {
     @Builder.Default
     private final double B = 0.75;
 
+    private final Bm25CorpusIndex corpusIndex;
+
     public List<Document> rerank(List<Document> corpus, String query, int limit) {
 
-        if (corpus == null || corpus.isEmpty()) {
+        if (corpus == null || corpus.isEmpty() || limit <= 0) {
             return new ArrayList<>();
         }
 
-        // Compute corpus statistics
-        CorpusStats stats = computeCorpusStats(corpus);
+        // One language decision per query, reused for chunks without stored terms
+        Analyzer analyzer = Bm25Tokenizer.analyzerFor(query);
+
+        // Intern query terms; repeated terms keep their weight as in the per-term sum
+        Map<String, Integer> termIds = new HashMap<>();
+        List<String> vocabulary = new ArrayList<>();
+        List<Integer> queryCounts = new ArrayList<>();
+        for (String term : Bm25Tokenizer.tokenize(query, analyzer)) {
+            Integer id = termIds.get(term);
+            if (id == null) {
+                termIds.put(term, vocabulary.size());
+                vocabulary.add(term);
+                queryCounts.add(1);
+            } else {
+                queryCounts.set(id, queryCounts.get(id) + 1);
+            }
+        }
 
-        // Tokenize query
-        List<String> queryTerms = tokenize(query);
+        String[] terms = vocabulary.toArray(String[]::new);
+        int[] queryWeights = queryCounts.stream().mapToInt(Integer::intValue).toArray();
+        int termCount = terms.length;
+        int docCount = corpus.size();
 
-        // Score and sort documents
-        return corpus.stream()
-                .sorted((d1, d2) -> Double.compare(
-                        score(queryTerms, d2, stats),
-                        score(queryTerms, d1, stats)
-                ))
-                .limit(limit)
-                .collect(Collectors.toList());
-    }
+        // Term frequencies laid out row per candidate: tf[doc * termCount + termId]
+        int[] tf = new int[docCount * termCount];
+        int[] docLengths = new int[docCount];
+        for (int doc = 0; doc < docCount; doc++) {
+            docLengths[doc] = Bm25TermVector.fill(corpus.get(doc), terms, tf, doc * termCount, analyzer);
+        }
 
-    private CorpusStats computeCorpusStats(List<Document> corpus) {
-        Map<String, Integer> docFreq = new HashMap<>();
-        Map<Document, List<String>> tokenizedDocs = new HashMap<>();
-        int totalLength = 0;
-        int totalDocs = corpus.size();
-
-        // Process each document
-        for (Document doc : corpus) {
-            List<String> tokens = tokenize(doc.getText());
-            tokenizedDocs.put(doc, tokens);
-            totalLength += tokens.size();
-
-            // Update document frequencies
-            Set<String> uniqueTerms = new HashSet<>(tokens);
-            for (String term : uniqueTerms) {
-                docFreq.put(term, docFreq.getOrDefault(term, 0) + 1);
+        double[] idf = new double[termCount];
+        double avgDocLength = computeIdf(terms, tf, docLengths, idf);
+
+        double[] scores = new double[docCount];
+        for (int doc = 0; doc < docCount; doc++) {
+            double norm = K * (1 - B + B * docLengths[doc] / avgDocLength);
+            int row = doc * termCount;
+            double score = 0.0;
+
+            // Calculate BM25 score
+            for (int term = 0; term < termCount; term++) {
+                int termFreq = tf[row + term];
+                if (termFreq == 0) {
+                    continue;
+                }
+                score += queryWeights[term] * idf[term] * (termFreq * (K + 1)) / (termFreq + norm);
             }
+            scores[doc] = score;
         }
 
-        double avgDocLength = (double) totalLength / totalDocs;
-
-        return new CorpusStats(docFreq, tokenizedDocs, avgDocLength, totalDocs);
+        int[] top = selectTop(scores, Math.min(limit, docCount));
+        List<Document> result = new ArrayList<>(top.length);
+        for (int doc : top) {
+            result.add(corpus.get(doc));
+        }
+        return result;
     }
 
-    private double score(List<String> queryTerms, Document doc, CorpusStats stats) {
-        List<String> tokens = stats.tokenizedDocs.get(doc);
-        if (tokens == null) {
-            return 0.0;
+    /**
+     * Fills {@code idf} for the query terms and returns the average document length.
+     * Uses the global corpus index once it is warmed up, the candidates otherwise.
+     */
+    private double computeIdf(String[] terms, int[] tf, int[] docLengths, double[] idf) {
+        int termCount = terms.length;
+        double totalDocs;
+        double avgDocLength;
+        int[] docFreq = new int[termCount];
+
+        if (corpusIndex != null && corpusIndex.isReady()) {
+            totalDocs = corpusIndex.totalDocs();
+            avgDocLength = corpusIndex.avgDocLength();
+            for (int term = 0; term < termCount; term++) {
+                docFreq[term] = corpusIndex.docFreq(terms[term]);
+            }
+        } else {
+            totalDocs = docLengths.length;
+            long totalLength = 0;
+            for (int doc = 0; doc < docLengths.length; doc++) {
+                totalLength += docLengths[doc];
+                for (int term = 0; term < termCount; term++) {
+                    if (tf[doc * termCount + term] > 0) {
+                        docFreq[term]++;
+                    }
+                }
+            }
+            avgDocLength = (double) totalLength / docLengths.length;
         }
 
-        // Calculate term frequencies for this document
-        Map<String, Integer> tfMap = new HashMap<>();
-        for (String token : tokens) {
-            tfMap.put(token, tfMap.getOrDefault(token, 0) + 1);
+        for (int term = 0; term < termCount; term++) {
+            int df = Math.max(1, docFreq[term]);
+            // BM25 IDF calculation редкость слова - оно поднимает
+            idf[term] = Math.log(1 + (totalDocs - df + 0.5) / (df + 0.5));
         }
 
-        int docLength = tokens.size();
-        double score = 0.0;
-
-        // Calculate BM25 score
-        for (String term : queryTerms) {
-            int tf = tfMap.getOrDefault(term, 0); //просто его count - то есть этого влияет на его вес в документе
-            int df = stats.docFreq.getOrDefault(term, 1);
-
-            // BM25 IDF calculation редкость слова - оно поднимает
-            double idf = Math.log(1 + (stats.totalDocs - df + 0.5) / (df + 0.5));
+        return avgDocLength > 0 ? avgDocLength : 1.0;
+    }
 
-            // BM25 term score calculation
-            double numerator = tf * (K + 1);
-            double denominator = tf + K * (1 - B + B * docLength / stats.avgDocLength);
-            score += idf * (numerator / denominator);
+    /**
+     * Returns indexes of the {@code k} best scores, best first. A bounded min-heap keeps the
+     * current top {@code k}; ties keep the vector search order.
+     */
+    private static int[] selectTop(double[] scores, int k) {
+        int[] heap = new int[k];
+        int size = 0;
+
+        for (int doc = 0; doc < scores.length; doc++) {
+            if (size < k) {
+                heap[size] = doc;
+                siftUp(heap, size++, scores);
+            } else if (isWorse(heap[0], doc, scores)) {
+                heap[0] = doc;
+                siftDown(heap, size, scores);
+            }
         }
 
-        return score;
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[i];
+            siftDown(heap, i, scores);
+        }
+        return result;
     }
 
-    private List<String> tokenize(String text) {
-        List<String> tokens = new ArrayList<>();
-        Analyzer analyzer = detectLanguageAnalyzer(text);
+    private static boolean isWorse(int a, int b, double[] scores) {
+        return scores[a] < scores[b] || (scores[a] == scores[b] && a > b);
+    }
 
-        try (TokenStream stream = analyzer.tokenStream(null, text)) {
-            stream.reset();
-            while (stream.incrementToken()) {
-                tokens.add(stream.getAttribute(CharTermAttribute.class).toString());
+    private static void siftUp(int[] heap, int index, double[] scores) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isWorse(heap[index], heap[parent], scores)) {
+                return;
             }
-            stream.end();
-        } catch (IOException e) {
-            throw new RerankException(TOKENIZATION_ERROR + e.toString());
+            swap(heap, index, parent);
+            index = parent;
         }
-
-        return tokens;
     }
 
-    private Analyzer detectLanguageAnalyzer(String text) {
-        Language lang = languageDetector.detectLanguageOf(text);
-        if (lang == Language.ENGLISH) {
-            return new EnglishAnalyzer();
-        } else if (lang == Language.RUSSIAN) {
-            return new RussianAnalyzer();
-        } else {
-            // Fallback to English analyzer for unsupported languages
-            return new EnglishAnalyzer();
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        int index = 0;
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < size && isWorse(heap[right], heap[left], scores)) {
+                worst = right;
+            }
+            if (!isWorse(heap[worst], heap[index], scores)) {
+                return;
+            }
+            swap(heap, index, worst);
+            index = worst;
         }
     }
 
-    // Inner class to hold corpus statistics
-    private static class CorpusStats {
-        final Map<String, Integer> docFreq;
-        final Map<Document, List<String>> tokenizedDocs;
-        final double avgDocLength;
-        final int totalDocs;
-
-        CorpusStats(Map<String, Integer> docFreq,
-                    Map<Document, List<String>> tokenizedDocs,
-                    double avgDocLength,
-                    int totalDocs) {
-            this.docFreq = docFreq;
-            this.tokenizedDocs = tokenizedDocs;
-            this.avgDocLength = avgDocLength;
-            this.totalDocs = totalDocs;
-        }
+    private static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
     }
 
 }
-
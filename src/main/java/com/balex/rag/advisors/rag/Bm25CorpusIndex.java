@@ -0,0 +1,174 @@
+package com.balex.rag.advisors.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Corpus-wide BM25 statistics for everything retrievable in vector_store.
+ *
+ * Chunks are added when their ingestion is published and removed when their rows are
+ * deleted, so reranking only looks up document frequencies and lengths instead of
+ * deriving them from the handful of candidates returned by the vector search.
+ * Changes made inside a transaction are applied once it commits, so a rolled back
+ * write leaves the statistics untouched.
+ *
+ * Each chunk keeps its unique terms as ids into a shared term dictionary rather than
+ * its own set of strings. Writers are serialized; readers never lock.
+ */
+@Component
+public class Bm25CorpusIndex {
+
+    private final Map<String, ChunkTerms> chunks = new ConcurrentHashMap<>();
+    private final Map<String, Integer> docFreq = new ConcurrentHashMap<>();
+    private final AtomicLong totalLength = new AtomicLong();
+
+    // Guarded by this
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+    // Chunks removed while the warm-up runs; its snapshot may still contain them
+    private final Set<String> removedDuringWarmUp = new HashSet<>();
+    private boolean warmingUp;
+
+    private volatile boolean ready;
+
+    public void addChunks(List<Document> documents) {
+        List<Map.Entry<String, Bm25TermVector>> termVectors = documents.stream()
+                .map(document -> Map.entry(document.getId(), Bm25TermVector.from(document)))
+                .toList();
+        afterCommit(() -> {
+            synchronized (this) {
+                for (Map.Entry<String, Bm25TermVector> entry : termVectors) {
+                    add(entry.getKey(), entry.getValue().termFreqs().keySet(), entry.getValue().length());
+                }
+            }
+        });
+    }
+
+    public void removeChunks(Collection<String> chunkIds) {
+        List<String> removed = List.copyOf(chunkIds);
+        afterCommit(() -> {
+            synchronized (this) {
+                for (String chunkId : removed) {
+                    remove(chunkId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts loading the stored chunks. Chunks removed from now on stay out of the index
+     * even if the warm-up reads them afterwards.
+     */
+    public synchronized void beginWarmUp() {
+        warmingUp = true;
+        removedDuringWarmUp.clear();
+    }
+
+    /**
+     * Loads a stored chunk during the warm-up.
+     */
+    public synchronized void loadChunk(String chunkId, Collection<String> uniqueTerms, int length) {
+        if (!removedDuringWarmUp.contains(chunkId)) {
+            add(chunkId, uniqueTerms, length);
+        }
+    }
+
+    /**
+     * Loads a stored chunk whose terms were not persisted at ingest.
+     */
+    public void loadChunk(String chunkId, String text) {
+        Bm25TermVector termVector = Bm25TermVector.of(text);
+        loadChunk(chunkId, termVector.termFreqs().keySet(), termVector.length());
+    }
+
+    /**
+     * Marks the index as complete once the startup warm-up has loaded the existing chunks.
+     * Until then reranking falls back to statistics computed from the candidates.
+     */
+    public synchronized void markReady() {
+        warmingUp = false;
+        removedDuringWarmUp.clear();
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready && !chunks.isEmpty();
+    }
+
+    public int totalDocs() {
+        return chunks.size();
+    }
+
+    public double avgDocLength() {
+        int total = chunks.size();
+        return total == 0 ? 0.0 : (double) totalLength.get() / total;
+    }
+
+    public int docFreq(String term) {
+        return docFreq.getOrDefault(term, 0);
+    }
+
+    private void add(String chunkId, Collection<String> uniqueTerms, int length) {
+        // Startup warm-up and live ingestion may both see the same chunk
+        if (chunks.containsKey(chunkId)) {
+            return;
+        }
+
+        int[] ids = new int[uniqueTerms.size()];
+        int i = 0;
+        for (String term : uniqueTerms) {
+            ids[i++] = termIds.computeIfAbsent(term, key -> {
+                terms.add(key);
+                return terms.size() - 1;
+            });
+            docFreq.merge(term, 1, Integer::sum);
+        }
+        chunks.put(chunkId, new ChunkTerms(ids, length));
+        totalLength.addAndGet(length);
+    }
+
+    private void remove(String chunkId) {
+        if (warmingUp) {
+            removedDuringWarmUp.add(chunkId);
+        }
+
+        ChunkTerms removed = chunks.remove(chunkId);
+        if (removed == null) {
+            return;
+        }
+
+        for (int id : removed.termIds()) {
+            docFreq.computeIfPresent(terms.get(id), (key, count) -> count > 1 ? count - 1 : null);
+        }
+        totalLength.addAndGet(-removed.length());
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private record ChunkTerms(int[] termIds, int length) {
+    }
+}
@@ -0,0 +1,93 @@
+package com.balex.rag.advisors.rag;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analyzed form of a chunk: term frequencies and token count.
+ *
+ * Computed once at ingest and stored in the chunk metadata next to the vector_store row,
+ * so reranking reads it back instead of running the Lucene analyzers on every question.
+ */
+public record Bm25TermVector(Map<String, Integer> termFreqs, int length) {
+
+    public static final String TERM_FREQS_KEY = "bm25_tf";
+    public static final String LENGTH_KEY = "bm25_length";
+
+    public static Bm25TermVector of(String text) {
+        return fromTokens(Bm25Tokenizer.tokenize(text));
+    }
+
+    static Bm25TermVector fromTokens(List<String> tokens) {
+        Map<String, Integer> termFreqs = new HashMap<>();
+        for (String token : tokens) {
+            termFreqs.merge(token, 1, Integer::sum);
+        }
+        return new Bm25TermVector(termFreqs, tokens.size());
+    }
+
+    /**
+     * Analyzes the chunk text and stores the result in the chunk metadata.
+     */
+    public static void attachTo(Document chunk) {
+        of(chunk.getText()).writeTo(chunk.getMetadata());
+    }
+
+    /**
+     * Reads the stored term vector of a chunk, analyzing the text only for chunks
+     * ingested before term vectors were persisted.
+     */
+    public static Bm25TermVector from(Document chunk) {
+        Bm25TermVector stored = fromMetadata(chunk.getMetadata());
+        return stored != null ? stored : of(chunk.getText());
+    }
+
+    /**
+     * Writes the frequencies of {@code terms} in the chunk into {@code tf} starting at
+     * {@code offset} and returns the chunk length. Stored frequencies are read in place;
+     * legacy chunks are analyzed with the analyzer already chosen for the query instead
+     * of detecting the language per chunk.
+     */
+    static int fill(Document chunk, String[] terms, int[] tf, int offset, Analyzer analyzer) {
+        Map<String, Object> metadata = chunk.getMetadata();
+        if (metadata.get(TERM_FREQS_KEY) instanceof Map<?, ?> storedFreqs
+                && metadata.get(LENGTH_KEY) instanceof Number storedLength) {
+            for (int i = 0; i < terms.length; i++) {
+                if (storedFreqs.get(terms[i]) instanceof Number storedTf) {
+                    tf[offset + i] = storedTf.intValue();
+                }
+            }
+            return storedLength.intValue();
+        }
+
+        Bm25TermVector analyzed = fromTokens(Bm25Tokenizer.tokenize(chunk.getText(), analyzer));
+        for (int i = 0; i < terms.length; i++) {
+            tf[offset + i] = analyzed.termFreq(terms[i]);
+        }
+        return analyzed.length();
+    }
+
+    static Bm25TermVector fromMetadata(Map<String, Object> metadata) {
+        if (!(metadata.get(TERM_FREQS_KEY) instanceof Map<?, ?> storedFreqs)
+                || !(metadata.get(LENGTH_KEY) instanceof Number storedLength)) {
+            return null;
+        }
+
+        Map<String, Integer> termFreqs = new HashMap<>(storedFreqs.size() * 2);
+        storedFreqs.forEach((term, tf) -> termFreqs.put(term.toString(), ((Number) tf).intValue()));
+        return new Bm25TermVector(termFreqs, storedLength.intValue());
+    }
+
+    public void writeTo(Map<String, Object> metadata) {
+        metadata.put(TERM_FREQS_KEY, termFreqs);
+        metadata.put(LENGTH_KEY, length);
+    }
+
+    public int termFreq(String term) {
+        return termFreqs.getOrDefault(term, 0);
+    }
+}
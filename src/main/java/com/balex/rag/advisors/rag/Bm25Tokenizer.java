@@ -0,0 +1,78 @@
+package com.balex.rag.advisors.rag;
+
+import com.balex.rag.model.exception.RerankException;
+import com.github.pemistahl.lingua.api.Language;
+import com.github.pemistahl.lingua.api.LanguageDetector;
+import com.github.pemistahl.lingua.api.LanguageDetectorBuilder;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.ru.RussianAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.balex.rag.model.constants.ApiErrorMessage.TOKENIZATION_ERROR;
+
+/**
+ * Shared analyzer registry for the BM25 path.
+ *
+ * Analyzers are created once per language and shared by all threads: Lucene keeps
+ * the token stream components per thread and reuses them across calls, so tokenizing
+ * does not rebuild stopword sets and stemmers. The language detector is thread-safe as well.
+ */
+final class Bm25Tokenizer {
+
+    private static final LanguageDetector languageDetector = LanguageDetectorBuilder
+            .fromLanguages(Language.ENGLISH, Language.RUSSIAN)
+            .build();
+
+    private static final Analyzer DEFAULT_ANALYZER = new EnglishAnalyzer();
+
+    private static final Map<Language, Analyzer> ANALYZERS = new EnumMap<>(Map.of(
+            Language.ENGLISH, DEFAULT_ANALYZER,
+            Language.RUSSIAN, new RussianAnalyzer()
+    ));
+
+    private Bm25Tokenizer() {
+    }
+
+    /**
+     * Detects the language of the text once and returns the shared analyzer for it.
+     */
+    static Analyzer analyzerFor(String text) {
+        if (text == null || text.isBlank()) {
+            return DEFAULT_ANALYZER;
+        }
+        // Fallback to English analyzer for unsupported languages
+        return ANALYZERS.getOrDefault(languageDetector.detectLanguageOf(text), DEFAULT_ANALYZER);
+    }
+
+    static List<String> tokenize(String text) {
+        return tokenize(text, analyzerFor(text));
+    }
+
+    static List<String> tokenize(String text, Analyzer analyzer) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+
+        try (TokenStream stream = analyzer.tokenStream(null, text)) {
+            CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(termAttribute.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new RerankException(TOKENIZATION_ERROR + e.toString());
+        }
+
+        return tokens;
+    }
+}
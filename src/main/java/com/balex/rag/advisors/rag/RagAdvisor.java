@@ -1,26 +1,46 @@
 package com.balex.rag.advisors.rag;
 
+import com.balex.rag.advisors.expansion.ExpansionQueryAdvisor;
+import com.balex.rag.advisors.expansion.PendingExpansion;
+import com.balex.rag.cache.RetrievalCache;
+import com.balex.rag.cache.RetrievalCache.Retrieval;
+import com.balex.rag.repo.VectorStoreRepository;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClientRequest;
 import org.springframework.ai.chat.client.ChatClientResponse;
 import org.springframework.ai.chat.client.advisor.api.AdvisorChain;
 import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.embedding.EmbeddingModel;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.balex.rag.advisors.expansion.ExpansionQueryAdvisor.ENRICHED_QUESTION;
+import static com.balex.rag.advisors.expansion.ExpansionQueryAdvisor.EXPANSION_RATIO;
+import static com.balex.rag.advisors.expansion.ExpansionQueryAdvisor.PENDING_EXPANSION;
 
 
+@Slf4j
 @Builder
 public class RagAdvisor implements BaseAdvisor {
 
+    /**
+     * Advisor context key with the id of the user whose documents may be retrieved.
+     */
+    public static final String USER_ID = "RAG_USER_ID";
+
     private static final PromptTemplate template = PromptTemplate.builder().template("""
             CONTEXT: {context}
             Question: {question}
@@ -29,13 +49,26 @@ public class RagAdvisor implements BaseAdvisor {
     private final int rerankFetchMultiplier;
     private final int searchTopK;
     private final double similarityThreshold;
-    private VectorStore vectorStore;
+    private final boolean hybridSearch;
+    private final int rrfK;
+    private final int searchBreadth;
+    // Speculative mode: how long to wait for the expansion after the raw search returned
+    private final Duration speculativeGrace;
+    private VectorStoreRepository vectorStoreRepository;
+    private EmbeddingModel embeddingModel;
+    // Shared by all requests; without a corpus index it scores with candidate statistics
+    @Builder.Default
+    private final BM25RerankEngine rerankEngine = BM25RerankEngine.builder().build();
+    private RetrievalCache retrievalCache;
+
+    // Lexical search blocks on JDBC, so it runs on virtual threads rather than the common pool
+    private final ExecutorService retrievalExecutor;
 
     @Getter
     private final int order;
 
-    public static RagAdvisorBuilder build(VectorStore vectorStore) {
-        return new RagAdvisorBuilder().vectorStore(vectorStore);
+    public static RagAdvisorBuilder build(VectorStoreRepository vectorStoreRepository) {
+        return new RagAdvisorBuilder().vectorStoreRepository(vectorStoreRepository);
     }
 
     @Override
@@ -43,21 +76,27 @@ public class RagAdvisor implements BaseAdvisor {
         String originalUserQuestion = chatClientRequest.prompt().getUserMessage().getText();
         String queryToRag = chatClientRequest.context().getOrDefault(ENRICHED_QUESTION, originalUserQuestion).toString();
 
-        SearchRequest searchRequest = SearchRequest.builder()
-                .query(queryToRag)
-                .topK(searchTopK * rerankFetchMultiplier)
-                .similarityThreshold(similarityThreshold)
-                .build();
+        // Retrieval is always scoped to one tenant; without a user nothing is retrieved
+        if (!(chatClientRequest.context().get(USER_ID) instanceof Number userId)) {
+            log.warn("No {} in advisor context, skipping retrieval", USER_ID);
+            return chatClientRequest.mutate().context("CONTEXT", "EMPTY").build();
+        }
 
-        List<Document> documents = vectorStore.similaritySearch(searchRequest);
+        Long ownerId = userId.longValue();
+        // Speculative mode: expansion starts on a cache miss; the fused result is cached under the raw question
+        List<Document> documents;
+        if (chatClientRequest.context().get(PENDING_EXPANSION) instanceof PendingExpansion expansion) {
+            documents = cached(ownerId, originalUserQuestion,
+                    () -> speculativeRetrieveAndRerank(originalUserQuestion, expansion, ownerId));
+            chatClientRequest = withExpansion(chatClientRequest, originalUserQuestion, expansion.completed());
+        } else {
+            documents = cached(ownerId, queryToRag, () -> Retrieval.of(retrieveAndRerank(queryToRag, ownerId)));
+        }
 
-        if (documents == null || documents.isEmpty()) {
+        if (documents.isEmpty()) {
             return chatClientRequest.mutate().context("CONTEXT", "EMPTY").build();
         }
 
-        BM25RerankEngine rerankEngine = BM25RerankEngine.builder().build();
-        documents = rerankEngine.rerank(documents, queryToRag, searchTopK);
-
         String llmContext = documents.stream()
                 .map(Document::getText)
                 .collect(Collectors.joining(System.lineSeparator()));
@@ -70,6 +109,93 @@ public class RagAdvisor implements BaseAdvisor {
                 .build();
     }
 
+    private List<Document> cached(Long userId, String query, Supplier<Retrieval> retrieval) {
+        return retrievalCache == null
+                ? retrieval.get().documents()
+                : retrievalCache.getOrCompute(userId, query, searchTopK, similarityThreshold,
+                        rerankFetchMultiplier, retrieval);
+    }
+
+    private List<Document> retrieveAndRerank(String query, Long userId) {
+        return rerank(retrieve(query, userId), query);
+    }
+
+    /**
+     * Searches with the raw question while the expansion is running, then fuses in the
+     * candidates of the expanded question. When the question was not expanded the raw
+     * candidates are used alone; so they are when the expansion failed or is not done
+     * shortly after the raw search, and that result is not cached.
+     */
+    private Retrieval speculativeRetrieveAndRerank(String question, PendingExpansion pending, Long userId) {
+        CompletableFuture<String> expansion = pending.start();
+        List<Document> raw = retrieve(question, userId);
+
+        long graceMillis = speculativeGrace == null ? 0 : speculativeGrace.toMillis();
+        String expanded;
+        try {
+            expanded = expansion.get(graceMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.debug("Expansion not done {} ms after the raw search, using raw candidates", graceMillis);
+            return Retrieval.degraded(rerank(raw, question));
+        } catch (ExecutionException e) {
+            log.warn("Query expansion failed, using raw candidates: {}", e.getCause().getMessage());
+            return Retrieval.degraded(rerank(raw, question));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Retrieval.degraded(rerank(raw, question));
+        }
+
+        if (expanded.equals(question)) {
+            return Retrieval.of(rerank(raw, question));
+        }
+
+        List<Document> fused = ReciprocalRankFusion.fuse(
+                List.of(retrieve(expanded, userId), raw), rrfK, searchTopK * rerankFetchMultiplier);
+        return Retrieval.of(rerank(fused, expanded));
+    }
+
+    // Same context keys the expansion advisor sets outside speculative mode
+    private static ChatClientRequest withExpansion(ChatClientRequest request, String question, String expanded) {
+        if (expanded == null) {
+            return request;
+        }
+        return request.mutate()
+                .context(ENRICHED_QUESTION, expanded)
+                .context(EXPANSION_RATIO, ExpansionQueryAdvisor.expansionRatio(question, expanded))
+                .build();
+    }
+
+    private List<Document> rerank(List<Document> candidates, String query) {
+        if (candidates == null || candidates.isEmpty()) {
+            return List.of();
+        }
+        return rerankEngine.rerank(candidates, query, searchTopK);
+    }
+
+    private List<Document> retrieve(String query, Long userId) {
+        int candidates = searchTopK * rerankFetchMultiplier;
+        if (!hybridSearch) {
+            return vectorSearch(query, userId, candidates);
+        }
+
+        // Lexical and ANN queries run concurrently, then get fused before the BM25 rerank;
+        // a failed lexical leg leaves the vector candidates alone
+        CompletableFuture<List<Document>> lexical = CompletableFuture.supplyAsync(
+                        () -> vectorStoreRepository.searchLexical(query, userId, candidates), retrievalExecutor)
+                .exceptionally(e -> {
+                    log.warn("Lexical search failed, using vector results only: {}", e.getMessage());
+                    return List.of();
+                });
+        List<Document> semantic = vectorSearch(query, userId, candidates);
+
+        return ReciprocalRankFusion.fuse(List.of(semantic, lexical.join()), rrfK, candidates);
+    }
+
+    private List<Document> vectorSearch(String query, Long userId, int topK) {
+        float[] embedding = embeddingModel.embed(query);
+        return vectorStoreRepository.searchSimilar(embedding, userId, topK, similarityThreshold, searchBreadth);
+    }
+
     @Override
     public ChatClientResponse after(ChatClientResponse chatClientResponse, AdvisorChain advisorChain) {
         return chatClientResponse;
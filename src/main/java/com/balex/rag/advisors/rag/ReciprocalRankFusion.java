@@ -0,0 +1,41 @@
+package com.balex.rag.advisors.rag;
+
+import org.springframework.ai.document.Document;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges ranked candidate lists by reciprocal-rank fusion: each document scores
+ * {@code sum(1 / (k + rank))} over the lists it appears in. The first list wins
+ * when the same chunk id is present in several lists.
+ */
+final class ReciprocalRankFusion {
+
+    private ReciprocalRankFusion() {
+    }
+
+    static List<Document> fuse(List<List<Document>> rankings, int k, int limit) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+
+        for (List<Document> ranking : rankings) {
+            if (ranking == null) {
+                continue;
+            }
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                documents.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), 1.0 / (k + rank + 1), Double::sum);
+            }
+        }
+
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .map(entry -> documents.get(entry.getKey()))
+                .toList();
+    }
+}
@@ -0,0 +1,66 @@
+package com.balex.rag.cache;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.aop.framework.ProxyFactory;
+
+/**
+ * Memoizes single-text embeddings, which is what the retrieval path asks for once per
+ * question. Batch and document embeddings used by ingestion go straight to the model.
+ *
+ * Applied through a class-based proxy, so the cached bean keeps the type of the model it
+ * wraps. Keys carry the embedding model name, so switching models never serves stale vectors.
+ */
+public class EmbeddingCacheInterceptor implements MethodInterceptor {
+
+    private final String modelName;
+    private final LruCache<Key, float[]> cache;
+
+    public EmbeddingCacheInterceptor(String modelName, LruCache<Key, float[]> cache) {
+        this.modelName = modelName;
+        this.cache = cache;
+    }
+
+    /**
+     * @return a proxy of the same class as {@code embeddingModel} that caches {@code embed(String)}
+     */
+    public static EmbeddingModel proxy(EmbeddingModel embeddingModel, String modelName, LruCache<Key, float[]> cache) {
+        ProxyFactory proxyFactory = new ProxyFactory(embeddingModel);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new EmbeddingCacheInterceptor(modelName, cache));
+        return (EmbeddingModel) proxyFactory.getProxy(embeddingModel.getClass().getClassLoader());
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (!isEmbedText(invocation)) {
+            return invocation.proceed();
+        }
+
+        String text = (String) invocation.getArguments()[0];
+        Key key = new Key(modelName, QueryNormalizer.normalize(text));
+        float[] embedding = cache.get(key);
+        if (embedding == null) {
+            embedding = (float[]) invocation.proceed();
+            cache.put(key, embedding);
+        }
+        // Every caller gets its own copy; one that normalizes its vector in place must not change the cached one
+        return embedding.clone();
+    }
+
+    public LruCache<Key, float[]> getCache() {
+        return cache;
+    }
+
+    private static boolean isEmbedText(MethodInvocation invocation) {
+        Class<?>[] parameterTypes = invocation.getMethod().getParameterTypes();
+        return invocation.getMethod().getName().equals("embed")
+                && parameterTypes.length == 1
+                && parameterTypes[0] == String.class
+                && invocation.getArguments()[0] != null;
+    }
+
+    public record Key(String model, String text) {
+    }
+}
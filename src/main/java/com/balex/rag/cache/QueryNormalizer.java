@@ -0,0 +1,23 @@
+package com.balex.rag.cache;
+
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+public final class QueryNormalizer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private QueryNormalizer() {
+    }
+
+    /**
+     * Cache key form of a question: Unicode NFC with whitespace collapsed and trimmed.
+     */
+    public static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String composed = Normalizer.normalize(query, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(composed).replaceAll(" ").trim();
+    }
+}
@@ -0,0 +1,130 @@
+package com.balex.rag.cache;
+
+import com.balex.rag.config.RagKnowledgeBaseProperties;
+import com.balex.rag.config.RagRetrievalCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Final, reranked chunk lists per user and question.
+ *
+ * Every key carries the user's document generation. Ingest and delete bump the generation
+ * both immediately and after their transaction commits, so a lookup that raced with the
+ * change can neither be served nor stored under the new generation. Every user also
+ * retrieves the shared knowledge base, so its generation is part of every key.
+ */
+@Slf4j
+@Component
+public class RetrievalCache {
+
+    public static final String CACHE_NAME = "retrieval-results";
+
+    private final boolean enabled;
+    private final LruCache<Key, List<Document>> cache;
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Long sharedUserId;
+
+    public RetrievalCache(RagRetrievalCacheProperties properties, RagKnowledgeBaseProperties knowledgeBaseProperties,
+                          MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.sharedUserId = knowledgeBaseProperties.sharedUserId();
+        this.cache = new LruCache<>(properties.maxSize(), properties.ttl());
+        LruCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached documents for the query or computes them, caching only a complete
+     * retrieval.
+     */
+    public List<Document> getOrCompute(Long userId, String query, int topK, double similarityThreshold,
+                                       int rerankFetchMultiplier, Supplier<Retrieval> retrieval) {
+        if (!enabled) {
+            return retrieval.get().documents();
+        }
+
+        long generation = generation(userId);
+        Key key = new Key(userId, generation, QueryNormalizer.normalize(query),
+                topK, similarityThreshold, rerankFetchMultiplier);
+
+        List<Document> cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        Retrieval computed = retrieval.get();
+        // Documents changed while retrieving: the result may already be stale
+        if (computed.complete() && generation(userId) == generation) {
+            cache.put(key, List.copyOf(computed.documents()));
+        }
+        return computed.documents();
+    }
+
+    /**
+     * Drops everything cached for the user. Inside a transaction the user is invalidated
+     * once more after completion, so results read from the pre-commit state are not kept.
+     */
+    public void invalidateUser(Long userId) {
+        evict(userId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long userId) {
+        generations.computeIfAbsent(userId, id -> new AtomicLong()).incrementAndGet();
+        if (userId.equals(sharedUserId)) {
+            cache.invalidateAll();
+        } else {
+            cache.invalidateIf(key -> key.userId().equals(userId));
+        }
+        log.debug("Retrieval cache invalidated for user: {}", userId);
+    }
+
+    private long generation(Long userId) {
+        long generation = ownGeneration(userId);
+        if (sharedUserId != null && !sharedUserId.equals(userId)) {
+            generation += ownGeneration(sharedUserId);
+        }
+        return generation;
+    }
+
+    private long ownGeneration(Long userId) {
+        AtomicLong generation = generations.get(userId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    /**
+     * @param complete false when retrieval fell back to a cheaper path, e.g. because query
+     *                 expansion was late; such a result is served once but not cached
+     */
+    public record Retrieval(List<Document> documents, boolean complete) {
+
+        public static Retrieval of(List<Document> documents) {
+            return new Retrieval(documents, true);
+        }
+
+        public static Retrieval degraded(List<Document> documents) {
+            return new Retrieval(documents, false);
+        }
+    }
+
+    private record Key(Long userId, long generation, String query, int topK,
+                       double similarityThreshold, int rerankFetchMultiplier) {
+    }
+}
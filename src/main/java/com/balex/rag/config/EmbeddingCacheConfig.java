@@ -0,0 +1,58 @@
+package com.balex.rag.config;
+
+import com.balex.rag.cache.EmbeddingCacheInterceptor;
+import com.balex.rag.cache.LruCache;
+import com.balex.rag.cache.LruCacheMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+
+/**
+ * Puts the query-embedding cache in front of the auto-configured embedding model, so every
+ * consumer of the {@link EmbeddingModel} bean (retrieval and the pgvector store) shares it.
+ * The bean is proxied rather than replaced, so it keeps its original type.
+ */
+@Configuration
+public class EmbeddingCacheConfig {
+
+    public static final String CACHE_NAME = "query-embeddings";
+
+    @Bean
+    public static BeanPostProcessor embeddingCachePostProcessor(
+            ObjectProvider<RagEmbeddingCacheProperties> cacheProperties,
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${spring.ai.ollama.embedding.options.model:${spring.ai.ollama.embedding.model:mxbai-embed-large}}")
+            String modelName) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof EmbeddingModel embeddingModel) || isCached(bean)) {
+                    return bean;
+                }
+
+                RagEmbeddingCacheProperties properties = cacheProperties.getObject();
+                if (!properties.enabled()) {
+                    return bean;
+                }
+
+                LruCache<EmbeddingCacheInterceptor.Key, float[]> cache =
+                        new LruCache<>(properties.maxSize(), properties.ttl());
+                meterRegistry.ifAvailable(registry -> LruCacheMetrics.monitor(registry, cache, CACHE_NAME));
+                return EmbeddingCacheInterceptor.proxy(embeddingModel, modelName, cache);
+            }
+        };
+    }
+
+    private static boolean isCached(Object bean) {
+        return bean instanceof Advised advised
+                && Arrays.stream(advised.getAdvisors())
+                .anyMatch(advisor -> advisor.getAdvice() instanceof EmbeddingCacheInterceptor);
+    }
+}
@@ -0,0 +1,25 @@
+package com.balex.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "rag.chat-memory")
+public record RagChatMemoryProperties(
+        // Most recent chat entries considered for every turn
+        @DefaultValue("8") int maxMessages,
+        // Tokens of recent entries sent with every turn, newest first; 0 sends all maxMessages
+        @DefaultValue("1024") int tokenBudget,
+        // Entries that no longer fit are folded into a per-chat summary in the background
+        @DefaultValue("true") boolean summaryEnabled,
+        @DefaultValue("256") int summaryMaxTokens,
+        // Entries folded into the summary per model call
+        @DefaultValue("40") int summaryBatchSize,
+        // Entries pushed out by maxMessages before they are summarized; entries beyond the
+        // token budget are summarized right away
+        @DefaultValue("4") int summaryMinEvicted,
+        // Conversations whose recent window is kept in process
+        @DefaultValue("10000") int maxConversations,
+        @DefaultValue("1h") Duration ttl
+) {}
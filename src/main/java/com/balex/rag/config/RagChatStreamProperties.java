@@ -0,0 +1,18 @@
+package com.balex.rag.config;
+
+import com.balex.rag.model.enums.SlowClientPolicy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "rag.chat-stream")
+public record RagChatStreamProperties(
+        // A frame is sent when it holds maxFrameTokens tokens or frameInterval has passed
+        @DefaultValue("50ms") Duration frameInterval,
+        @DefaultValue("32") int maxFrameTokens,
+        // Frames waiting for a slow client before slowClientPolicy applies
+        @DefaultValue("64") int maxPendingFrames,
+        // DROP skips frames (the closing entry event still has the whole answer); CANCEL stops generating
+        @DefaultValue("DROP") SlowClientPolicy slowClientPolicy
+) {}
@@ -11,5 +11,8 @@ public record RagDefaultsProperties(
         @DefaultValue("0.3") double temperature,
         @DefaultValue("1.1") double repeatPenalty,
         @DefaultValue("2") int searchTopK,
-        @DefaultValue("0.3") double similarityThreshold
+        @DefaultValue("0.3") double similarityThreshold,
+        @DefaultValue("false") boolean hybridSearch,
+        @DefaultValue("60") int rrfK,
+        @DefaultValue("0") int searchBreadth
 ) {}
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.balex.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "rag.embedding-cache")
+public record RagEmbeddingCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("10000") int maxSize,
+        @DefaultValue("0s") Duration ttl
+) {}
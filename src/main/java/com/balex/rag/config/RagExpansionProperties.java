@@ -3,10 +3,30 @@ package com.balex.rag.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 
+import java.time.Duration;
+
 @ConfigurationProperties(prefix = "rag.expansion")
 public record RagExpansionProperties(
         @DefaultValue("0.0") double temperature,
         @DefaultValue("1") int topK,
         @DefaultValue("0.1") double topP,
-        @DefaultValue("1.0") double repeatPenalty
+        @DefaultValue("1.0") double repeatPenalty,
+        // Expansion cache keyed by the normalized question
+        @DefaultValue("true") boolean cacheEnabled,
+        @DefaultValue("1000") int cacheMaxSize,
+        @DefaultValue("1h") Duration cacheTtl,
+        // Questions with at least this many words are specific enough to search as-is
+        @DefaultValue("12") int skipMinWords,
+        // Skip lengths whose observed EXPANSION_RATIO stays below this
+        @DefaultValue("1.2") double skipMaxRatio,
+        @DefaultValue("20") int skipMinSamples,
+        // Ratio averages are kept per question length up to this many words; longer questions share the last one
+        @DefaultValue("32") int skipRatioBuckets,
+        // Raw question is used when expansion takes longer; zero waits indefinitely
+        @DefaultValue("1500ms") Duration timeout,
+        // Retrieval on the raw question runs alongside expansion; the expanded question's candidates are fused in
+        @DefaultValue("false") boolean speculative,
+        // How long speculative retrieval waits for the expansion once the raw search returned;
+        // a later expansion is dropped and the raw-only result is not cached
+        @DefaultValue("200ms") Duration speculativeGrace
 ) {}
@@ -0,0 +1,61 @@
+package com.balex.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "rag.ingestion")
+public record RagIngestionProperties(
+        // Workers reading, hashing and splitting uploaded files
+        @DefaultValue("2") int prepareParallelism,
+        // Workers calling the embedding model
+        @DefaultValue("2") int embedParallelism,
+        // Workers inserting chunks into vector_store
+        @DefaultValue("2") int writeParallelism,
+        // Chunk windows buffered between two stages
+        @DefaultValue("4") int queueCapacity,
+        // Characters of an upload decoded and split at a time; bounds memory per file
+        @DefaultValue("65536") int windowChars,
+        // Re-uploads of a file are diffed against its previous version chunk by chunk
+        @DefaultValue("true") boolean incremental,
+        // Chunks per embedding request, adapted between min and max to hit the target latency
+        @DefaultValue("32") int embedBatchInitial,
+        @DefaultValue("4") int embedBatchMin,
+        @DefaultValue("256") int embedBatchMax,
+        @DefaultValue("2s") Duration embedTargetLatency,
+        // A partial batch is embedded once its oldest chunk waited this long for more
+        @DefaultValue("50ms") Duration embedLinger,
+        // Attempts per failed batch, with exponential backoff from the initial delay
+        @DefaultValue("3") int embedMaxAttempts,
+        @DefaultValue("1500ms") Duration embedRetryDelay,
+        // Windows of at least this many chunks are written with binary COPY; 0 disables it, -1 derives it
+        @DefaultValue("-1") int copyMinChunks,
+        // Uploads are copied here before a job starts, so an interrupted job can resume
+        @DefaultValue("data/ingestion-spool") Path spoolDir,
+        // Job progress is sampled and sent to subscribers at this rate
+        @DefaultValue("250ms") Duration progressInterval,
+        // Completed and failed jobs are deleted this long after they finished
+        @DefaultValue("7d") Duration jobRetention,
+        // Shutdown waits this long for running jobs to reach their next checkpoint
+        @DefaultValue("30s") Duration shutdownTimeout
+) {
+
+    // Rough average for English text
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /**
+     * Chunk count from which a window is written with COPY. Derived, it is half of what a
+     * full window holds, so full windows are copied and only the short last window of a file
+     * is inserted row by row: 65536-char windows of 200-token chunks hold about 80 chunks, so
+     * COPY starts at 40.
+     */
+    public int effectiveCopyMinChunks(int chunkSizeTokens) {
+        if (copyMinChunks >= 0) {
+            return copyMinChunks;
+        }
+        int chunksPerWindow = windowChars / Math.max(1, chunkSizeTokens * CHARS_PER_TOKEN);
+        return Math.max(1, chunksPerWindow / 2);
+    }
+}
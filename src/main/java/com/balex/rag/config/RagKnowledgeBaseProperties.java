@@ -0,0 +1,28 @@
+package com.balex.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+@ConfigurationProperties(prefix = "rag.knowledge-base")
+public record RagKnowledgeBaseProperties(
+        // Load the directory in the background on startup
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("knowledgebase") Path directory,
+        // Glob over paths relative to the directory
+        @DefaultValue("**.txt") String pattern,
+        // Account the documents are stored under; its chunks are searched for every user,
+        // so it should be a dedicated account
+        Long ownerUserId,
+        // Changed files per ingestion job; jobs run in parallel up to the per-user task limit
+        @DefaultValue("16") int batchFiles
+) {
+
+    /**
+     * @return the owner whose chunks every user retrieves, null when the knowledge base is off
+     */
+    public Long sharedUserId() {
+        return enabled ? ownerUserId : null;
+    }
+}
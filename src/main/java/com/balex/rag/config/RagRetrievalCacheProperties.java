@@ -0,0 +1,13 @@
+package com.balex.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "rag.retrieval-cache")
+public record RagRetrievalCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("1000") int maxSize,
+        @DefaultValue("30m") Duration ttl
+) {}
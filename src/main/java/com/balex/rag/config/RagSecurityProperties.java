@@ -0,0 +1,12 @@
+package com.balex.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+@ConfigurationProperties(prefix = "rag.security")
+public record RagSecurityProperties(
+        // Users granted ADMIN_ROLE, e.g. for rebuilding the shared vector index
+        @DefaultValue List<Long> adminUserIds
+) {}
@@ -0,0 +1,17 @@
+package com.balex.rag.config;
+
+import com.balex.rag.model.enums.TaskExecutorType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "rag.task-executor")
+public record RagTaskExecutorProperties(
+        // VIRTUAL starts a virtual thread per task; PLATFORM uses a fixed pool
+        @DefaultValue("VIRTUAL") TaskExecutorType type,
+        @DefaultValue("16") int poolSize,
+        @DefaultValue("256") int queueCapacity,
+        // Uploads of one user running at the same time; the rest wait their turn
+        @DefaultValue("2") int maxTasksPerUser,
+        // Chat streams of one user, counted separately from uploads
+        @DefaultValue("4") int maxChatStreamsPerUser
+) {}
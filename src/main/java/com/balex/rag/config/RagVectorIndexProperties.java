@@ -0,0 +1,19 @@
+package com.balex.rag.config;
+
+import com.balex.rag.model.enums.VectorIndexType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "rag.vector-index")
+public record RagVectorIndexProperties(
+        @DefaultValue("HNSW") VectorIndexType type,
+        @DefaultValue("16") int m,
+        @DefaultValue("64") int efConstruction,
+        @DefaultValue("100") int lists,
+        @DefaultValue("false") boolean manageOnStartup,
+        // Keep scanning the index until enough rows pass the tenant filter; needs pgvector 0.8+
+        @DefaultValue("true") boolean iterativeScan,
+        @DefaultValue("5s") Duration progressLogInterval
+) {}
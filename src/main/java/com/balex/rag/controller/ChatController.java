@@ -1,6 +1,7 @@
 package com.balex.rag.controller;
 
 import com.balex.rag.model.constants.ApiLogMessage;
+import com.balex.rag.model.dto.ChatSummaryDTO;
 import com.balex.rag.model.entity.Chat;
 import com.balex.rag.service.ChatService;
 import com.balex.rag.utils.ApiUtils;
@@ -22,9 +23,9 @@ public class ChatController {
     private final ChatService chatService;
 
     @GetMapping("")
-    public ResponseEntity<List<Chat>> mainPage() {
+    public ResponseEntity<List<ChatSummaryDTO>> mainPage() {
         log.trace(ApiLogMessage.NAME_OF_CURRENT_METHOD.getValue(), ApiUtils.getMethodName());
-        List<Chat> response = chatService.getAllChats();
+        List<ChatSummaryDTO> response = chatService.getAllChats();
         return ResponseEntity.ok(response);
     }
 
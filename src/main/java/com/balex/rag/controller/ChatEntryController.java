@@ -6,11 +6,17 @@ import com.balex.rag.model.dto.UserEntryRequest;
 import com.balex.rag.model.entity.ChatEntry;
 import com.balex.rag.service.ChatEntryService;
 import com.balex.rag.utils.ApiUtils;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -30,11 +36,45 @@ public class ChatEntryController {
             @RequestBody UserEntryRequest request) {
         log.trace(ApiLogMessage.NAME_OF_CURRENT_METHOD.getValue(), ApiUtils.getMethodName());
 
-        boolean onlyContext = request.onlyContext() != null ? request.onlyContext() : ragDefaults.onlyContext();
-        int topK = request.topK() != null ? request.topK() : ragDefaults.topK();
-        double topP = request.topP() != null ? request.topP() : ragDefaults.topP();
-
-        ChatEntry entry = chatEntryService.addUserEntry(chatId, request.content(), onlyContext, topK, topP);
+        UserEntryRequest resolved = withDefaults(request);
+        ChatEntry entry = chatEntryService.addUserEntry(
+                chatId, resolved.content(), resolved.onlyContext(), resolved.topK(), resolved.topP());
         return ResponseEntity.ok(entry);
     }
-}
\ No newline at end of file
+
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Answer text deltas, then the saved answer entry",
+                    content = @Content(mediaType = "text/event-stream",
+                            examples = @ExampleObject(
+                                    value = "event: delta\ndata: {\"text\": \"The\"}\n\nevent: delta\ndata: {\"text\": \" answer\"}\n\n"
+                                            + "event: entry\ndata: {\"id\": 42, \"content\": \"The answer\", \"role\": \"ASSISTANT\"}\n\n"
+                            ))),
+            @ApiResponse(responseCode = "404", description = "Chat not found")
+    })
+    @PostMapping(value = "/{chatId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamUserEntry(
+            @PathVariable Long chatId,
+            @RequestBody UserEntryRequest request) {
+        log.trace(ApiLogMessage.NAME_OF_CURRENT_METHOD.getValue(), ApiUtils.getMethodName());
+
+        UserEntryRequest resolved = withDefaults(request);
+        return chatEntryService.streamUserEntry(
+                chatId, resolved.content(), resolved.onlyContext(), resolved.topK(), resolved.topP());
+    }
+
+    @DeleteMapping("/{chatId}/stream")
+    public ResponseEntity<Void> cancelGeneration(@PathVariable Long chatId) {
+        log.trace(ApiLogMessage.NAME_OF_CURRENT_METHOD.getValue(), ApiUtils.getMethodName());
+        return chatEntryService.cancelGeneration(chatId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    private UserEntryRequest withDefaults(UserEntryRequest request) {
+        return new UserEntryRequest(
+                request.content(),
+                request.onlyContext() != null ? request.onlyContext() : ragDefaults.onlyContext(),
+                request.topK() != null ? request.topK() : ragDefaults.topK(),
+                request.topP() != null ? request.topP() : ragDefaults.topP());
+    }
+}
@@ -11,6 +11,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestPart;
@@ -44,4 +46,18 @@ public class DocumentUploadStreamController {
         Integer userId = apiUtils.getUserIdFromAuthentication();
         return userDocumentService.processUploadedFilesWithSse(files, userId.longValue());
     }
+
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Progress stream of a running or finished upload job",
+                    content = @Content(mediaType = "text/event-stream",
+                            examples = @ExampleObject(
+                                    value = "data: {\"jobId\": 7, \"percent\": 66, \"processedFiles\": 2, \"totalFiles\": 3, \"currentFile\": \"doc2.txt\"}\n\n"
+                            ))),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+    })
+    @GetMapping(value = "/jobs/{jobId}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJobProgress(@PathVariable Long jobId) {
+        Integer userId = apiUtils.getUserIdFromAuthentication();
+        return userDocumentService.attachToJob(jobId, userId.longValue());
+    }
 }
\ No newline at end of file
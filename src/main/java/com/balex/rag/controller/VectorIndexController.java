@@ -0,0 +1,40 @@
+package com.balex.rag.controller;
+
+import com.balex.rag.model.IndexBuildProgress;
+import com.balex.rag.model.constants.ApiLogMessage;
+import com.balex.rag.service.VectorIndexService;
+import com.balex.rag.utils.ApiUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+@Slf4j
+@RestController
+@Validated
+@RequiredArgsConstructor
+@RequestMapping("${end.points.vector-index}")
+// The ANN index is shared by all users
+@PreAuthorize("hasAuthority('ADMIN_ROLE')")
+public class VectorIndexController {
+
+    private final VectorIndexService vectorIndexService;
+
+    @PostMapping("/rebuild")
+    public ResponseEntity<Void> rebuildIndex() {
+        log.trace(ApiLogMessage.NAME_OF_CURRENT_METHOD.getValue(), ApiUtils.getMethodName());
+        boolean started = vectorIndexService.rebuildIndex();
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT).build();
+    }
+
+    @GetMapping("/progress")
+    public ResponseEntity<IndexBuildProgress> buildProgress() {
+        log.trace(ApiLogMessage.NAME_OF_CURRENT_METHOD.getValue(), ApiUtils.getMethodName());
+        return vectorIndexService.getBuildProgress()
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+}
@@ -0,0 +1,8 @@
+package com.balex.rag.model;
+
+/**
+ * One chunk of a loaded document: its position in the file, the vector_store row holding
+ * it and the hash of its text.
+ */
+public record ChunkManifestEntry(int chunkIndex, String chunkId, String chunkHash) {
+}
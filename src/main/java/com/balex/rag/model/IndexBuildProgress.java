@@ -0,0 +1,20 @@
+package com.balex.rag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexBuildProgress {
+    private String indexName;
+    private String phase;
+    private long blocksDone;
+    private long blocksTotal;
+    private long tuplesDone;
+    private long tuplesTotal;
+    private int percent;
+}
@@ -0,0 +1,20 @@
+package com.balex.rag.model;
+
+import com.balex.rag.model.enums.IngestionJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJob {
+    private Long id;
+    private Long userId;
+    private IngestionJobStatus status;
+    private int totalFiles;
+    private int processedFiles;
+    private String error;
+}
@@ -0,0 +1,26 @@
+package com.balex.rag.model;
+
+import com.balex.rag.model.enums.IngestionFileStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One file of an ingestion job, spooled to disk so the job can be resumed after a restart.
+ * {@code windowsDone} is the checkpoint: every chunk window below it is committed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJobFile {
+    private Long id;
+    private Long jobId;
+    private int fileIndex;
+    private String filename;
+    private String spoolPath;
+    private String ingestionId;
+    private IngestionFileStatus status;
+    private int windowsDone;
+}
@@ -0,0 +1,7 @@
+package com.balex.rag.model;
+
+/**
+ * Size and modification time of a knowledge-base file when it was last loaded.
+ */
+public record KnowledgeBaseFile(String path, long size, long modifiedMillis) {
+}
@@ -10,9 +10,21 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 public class UploadProgress {
+
+    public static final String STATUS_PROCESSING = "processing";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+    // Stored job that this instance is not running (yet) or stopped for shutdown; attach again later
+    public static final String STATUS_QUEUED = "queued";
+
+    private Long jobId;
     private int percent;
     private int processedFiles;
+    private int skippedFiles;
     private int totalFiles;
+    private long processedChunks;
+    // Chunks split so far; grows until every file is split
+    private long queuedChunks;
     private String currentFile;
-    private String status; // "processing", "completed", "error"
+    private String status;
 }
\ No newline at end of file
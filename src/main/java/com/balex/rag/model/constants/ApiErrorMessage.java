@@ -16,11 +16,14 @@ public enum ApiErrorMessage {
     EMAIL_NOT_FOUND("Email: %s was not found"),
     USER_ROLE_NOT_FOUND("Role was not found"),
     COMMENT_NOT_FOUND_BY_ID("Comment with ID: %s was not found"),
+    CHAT_NOT_FOUND_BY_ID("Chat with ID: %s was not found"),
 
     TOKENIZATION_ERROR("Tokenization failed"),
 
     UPLOADED_FILENAME_EMPTY("Filename is empty"),
     UPLOAD_FILE_READ_ERROR("Failed to read file"),
+    UPLOAD_FILE_SPOOL_ERROR("Failed to store uploaded file "),
+    INGESTION_JOB_NOT_FOUND_BY_ID("Ingestion job with ID: %s was not found"),
 
     INVALID_TOKEN_SIGNATURE("Invalid token signature"),
     ERROR_DURING_JWT_PROCESSING("An unexpected error occurred during JWT processing"),
@@ -0,0 +1,23 @@
+package com.balex.rag.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Chat as listed, without its history.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSummaryDTO implements Serializable {
+
+    private Long id;
+    private String title;
+    private Long idOwner;
+    private LocalDateTime createdAt;
+
+}
@@ -1,5 +1,6 @@
 package com.balex.rag.model.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -30,8 +31,16 @@ public class Chat {
     @CreationTimestamp
     private LocalDateTime createdAt;
 
+    // Running summary of the entries up to and including summaryEntryId
+    @JsonIgnore
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+
+    @JsonIgnore
+    private Long summaryEntryId;
+
     @OrderBy("createdAt ASC")
-    @OneToMany(mappedBy = "chat", fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval = true)
+    @OneToMany(mappedBy = "chat", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
     private List<ChatEntry> history = new ArrayList<>();
 
 
@@ -0,0 +1,7 @@
+package com.balex.rag.model.enums;
+
+public enum IngestionFileStatus {
+    PENDING,
+    STORED,
+    SKIPPED
+}
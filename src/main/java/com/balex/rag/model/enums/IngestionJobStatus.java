@@ -0,0 +1,8 @@
+package com.balex.rag.model.enums;
+
+public enum IngestionJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,6 @@
+package com.balex.rag.model.enums;
+
+public enum SlowClientPolicy {
+    DROP,
+    CANCEL
+}
@@ -0,0 +1,6 @@
+package com.balex.rag.model.enums;
+
+public enum UserTaskKind {
+    INGESTION,
+    CHAT_STREAM
+}
@@ -0,0 +1,17 @@
+package com.balex.rag.model.enums;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+@Getter
+public enum VectorIndexType {
+    HNSW("hnsw", "vector_store_hnsw_index", "hnsw.ef_search", "hnsw.iterative_scan"),
+    IVFFLAT("ivfflat", "vector_store_ivfflat_index", "ivfflat.probes", "ivfflat.iterative_scan");
+
+    private final String accessMethod;
+    private final String indexName;
+    private final String searchBreadthSetting;
+    // pgvector 0.8+
+    private final String iterativeScanSetting;
+}
@@ -1,6 +1,7 @@
 package com.balex.rag.repo;
 
 import com.balex.rag.model.entity.ChatEntry;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -10,4 +11,9 @@ import java.util.List;
 public interface ChatEntryRepository extends JpaRepository<ChatEntry, Long> {
 
     List<ChatEntry> findByChatIdOrderByCreatedAtAsc(Long chatId);
+
+    List<ChatEntry> findByChatIdAndIdGreaterThanOrderByCreatedAtDesc(Long chatId, Long afterId, Limit limit);
+
+    List<ChatEntry> findByChatIdAndIdGreaterThanAndIdLessThanOrderByCreatedAtAsc(Long chatId, Long afterId,
+                                                                                  Long beforeId, Limit limit);
 }
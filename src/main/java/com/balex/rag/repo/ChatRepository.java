@@ -1,9 +1,43 @@
 package com.balex.rag.repo;
 
+import com.balex.rag.model.dto.ChatSummaryDTO;
 import com.balex.rag.model.entity.Chat;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
 
 public interface ChatRepository extends JpaRepository<Chat, Long> {
 
+    // The list never needs the history, so it is not loaded at all
+    @Query("""
+            SELECT new com.balex.rag.model.dto.ChatSummaryDTO(c.id, c.title, c.idOwner, c.createdAt)
+            FROM Chat c
+            ORDER BY c.createdAt DESC
+            """)
+    List<ChatSummaryDTO> findAllSummaries();
+
+    // A single chat is serialized with its history after the session is closed
+    @EntityGraph(attributePaths = "history")
+    Optional<Chat> findWithHistoryById(Long id);
+
+    /**
+     * Stores a new summary unless another compaction moved the watermark meanwhile.
+     *
+     * @return 1 when stored
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE Chat c SET c.summary = :summary, c.summaryEntryId = :summaryEntryId
+            WHERE c.id = :chatId AND COALESCE(c.summaryEntryId, 0) = :previousEntryId
+            """)
+    int updateSummary(@Param("chatId") Long chatId, @Param("summary") String summary,
+                      @Param("summaryEntryId") Long summaryEntryId, @Param("previousEntryId") Long previousEntryId);
 }
 
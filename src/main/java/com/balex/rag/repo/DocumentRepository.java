@@ -1,9 +1,13 @@
 package com.balex.rag.repo;
 
 import com.balex.rag.model.LoadedDocument;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface DocumentRepository extends JpaRepository<LoadedDocument, Long> {
 
@@ -11,5 +15,12 @@ public interface DocumentRepository extends JpaRepository<LoadedDocument, Long>
 
     List<LoadedDocument> findByUserId(Integer userId);
 
+    Optional<LoadedDocument> findFirstByUserIdAndFilenameOrderByLoadedAtDesc(Long userId, String filename);
+
+    void deleteByUserIdAndFilenameIn(Long userId, Collection<String> filenames);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<LoadedDocument> findWithLockById(Long id);
+
 }
 
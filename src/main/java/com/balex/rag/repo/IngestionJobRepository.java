@@ -0,0 +1,60 @@
+package com.balex.rag.repo;
+
+import com.balex.rag.model.IngestionJob;
+import com.balex.rag.model.IngestionJobFile;
+import com.balex.rag.model.enums.IngestionFileStatus;
+import com.balex.rag.model.enums.IngestionJobStatus;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Persisted ingestion jobs and their files; the source of truth for resuming after a restart.
+ */
+@Repository
+public interface IngestionJobRepository {
+
+    /**
+     * Reserves the id of a job that is about to be created.
+     */
+    long nextJobId();
+
+    /**
+     * Records a queued job with its files in one transaction.
+     */
+    IngestionJob createJob(Long jobId, Long userId, List<IngestionJobFile> files);
+
+    Optional<IngestionJob> findJob(Long jobId);
+
+    List<IngestionJob> findByStatusIn(List<IngestionJobStatus> statuses);
+
+    List<IngestionJobFile> findPendingFiles(Long jobId);
+
+    /**
+     * @return filenames in queued or running jobs of the user, finished or not
+     */
+    List<String> findUnfinishedFilenames(Long userId);
+
+    void updateStatus(Long jobId, IngestionJobStatus status, String error);
+
+    /**
+     * Moves the checkpoint of a file forward; never back, as checkpoints may commit out of order.
+     */
+    void advanceCheckpoint(Long jobFileId, int windowsDone);
+
+    /**
+     * Marks a pending file as finished and counts it on its job. Does nothing for a file
+     * that is already finished, so replaying the completion after a restart is harmless.
+     */
+    void finishFile(Long jobFileId, IngestionFileStatus status);
+
+    /**
+     * Deletes completed and failed jobs last updated before the cutoff, with their files.
+     * Jobs the knowledge-base manifest still refers to are kept.
+     *
+     * @return number of deleted jobs
+     */
+    int deleteFinishedBefore(Instant cutoff);
+}
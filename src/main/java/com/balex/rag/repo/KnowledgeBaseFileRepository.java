@@ -0,0 +1,32 @@
+package com.balex.rag.repo;
+
+import com.balex.rag.model.KnowledgeBaseFile;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manifest of the loaded knowledge-base directory, keyed by relative path.
+ */
+@Repository
+public interface KnowledgeBaseFileRepository {
+
+    /**
+     * @return files whose recorded version was loaded by a completed job
+     */
+    Map<String, KnowledgeBaseFile> findLoaded();
+
+    /**
+     * @return every recorded path, whatever the state of its job
+     */
+    List<String> findPaths();
+
+    /**
+     * Records the files as being loaded by the job.
+     */
+    void saveAll(List<KnowledgeBaseFile> files, Long jobId);
+
+    void deleteAll(Collection<String> paths);
+}
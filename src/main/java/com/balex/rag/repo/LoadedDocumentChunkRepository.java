@@ -0,0 +1,17 @@
+package com.balex.rag.repo;
+
+import com.balex.rag.model.ChunkManifestEntry;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Chunk manifest of each loaded_document; rows go away with their document.
+ */
+@Repository
+public interface LoadedDocumentChunkRepository {
+
+    List<ChunkManifestEntry> findByDocumentId(Long documentId);
+
+    void saveAll(Long documentId, List<ChunkManifestEntry> entries);
+}
@@ -1,12 +1,15 @@
 package com.balex.rag.repo;
 
 import com.balex.rag.model.entity.RefreshToken;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.Optional;
 
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Integer> {
 
+    // The user is read after the session is closed when refreshing an access token
+    @EntityGraph(attributePaths = "user")
     Optional<RefreshToken> findByToken(String token);
 
     Optional<RefreshToken> findByUserId(Integer userId);
@@ -0,0 +1,28 @@
+package com.balex.rag.repo;
+
+import com.balex.rag.model.IndexBuildProgress;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface VectorIndexRepository {
+
+    /**
+     * @return storage options of the index (e.g. {@code m=16}), empty if the index does not exist
+     */
+    Optional<List<String>> findIndexOptions(String indexName, String accessMethod);
+
+    void createIndexConcurrently(String indexName, String accessMethod, List<String> options);
+
+    void dropIndexConcurrently(String indexName);
+
+    /**
+     * Renames {@code indexName}, if it exists, to {@code retiredName} and {@code newIndexName}
+     * to {@code indexName} in one transaction, so searches never see the table without an index.
+     */
+    void swapIndex(String indexName, String newIndexName, String retiredName);
+
+    Optional<IndexBuildProgress> findBuildProgress();
+}
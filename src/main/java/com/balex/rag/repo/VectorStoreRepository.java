@@ -1,13 +1,70 @@
 package com.balex.rag.repo;
 
+import org.springframework.ai.document.Document;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public interface VectorStoreRepository {
 
-    void deleteBySourceIn(List<String> sources);
-
     void deleteByUserId(Long userId);
-}
\ No newline at end of file
+
+    /**
+     * Removes the chunks of the user's documents stored under the given filenames.
+     */
+    void deleteByUserIdAndSourceIn(Long userId, Collection<String> sources);
+
+    void deleteByIds(Collection<String> ids);
+
+    /**
+     * Removes the chunks written by one ingestion of a file.
+     */
+    void deleteByIngestionId(String ingestionId);
+
+    /**
+     * Makes the chunks written by one ingestion of a file visible to retrieval.
+     *
+     * @return the published chunks with their metadata; the text is only included for
+     * chunks stored without a term vector
+     */
+    List<Document> publishIngestion(String ingestionId);
+
+    /**
+     * Inserts chunks whose embeddings were computed by the caller; {@code embeddings}
+     * is aligned with {@code chunks}. They stay hidden from retrieval until their
+     * ingestion is published.
+     */
+    void insertChunks(List<Document> chunks, List<float[]> embeddings);
+
+    /**
+     * @param searchBreadth ANN candidate list size for this query (hnsw.ef_search or ivfflat.probes),
+     *                      0 keeps the database default
+     */
+    List<Document> searchSimilar(float[] embedding, Long userId, int topK, double similarityThreshold,
+                                 int searchBreadth);
+
+    /**
+     * Looks up stored embeddings by chunk content hash, across all users. Only vectors of
+     * the given model and dimension qualify; rows stored without a model never do.
+     *
+     * @return one embedding per hash that is already stored
+     */
+    Map<String, float[]> findEmbeddingsByChunkHash(Collection<String> chunkHashes, String embeddingModel,
+                                                   int dimensions);
+
+    List<Document> searchLexical(String query, Long userId, int topK);
+
+    void forEachChunkTerms(ChunkTermsConsumer consumer);
+
+    @FunctionalInterface
+    interface ChunkTermsConsumer {
+        /**
+         * @param terms   unique terms stored at ingest, or null for chunks stored without them
+         * @param content chunk text, only provided when terms are null
+         */
+        void accept(String id, List<String> terms, int length, String content);
+    }
+}
@@ -0,0 +1,177 @@
+package com.balex.rag.repo.impl;
+
+import com.balex.rag.model.IngestionJob;
+import com.balex.rag.model.IngestionJobFile;
+import com.balex.rag.model.enums.IngestionFileStatus;
+import com.balex.rag.model.enums.IngestionJobStatus;
+import com.balex.rag.repo.IngestionJobRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+@RequiredArgsConstructor
+public class IngestionJobRepositoryImpl implements IngestionJobRepository {
+
+    private static final RowMapper<IngestionJob> JOB_ROW_MAPPER = (rs, rowNum) -> IngestionJob.builder()
+            .id(rs.getLong("id"))
+            .userId(rs.getLong("user_id"))
+            .status(IngestionJobStatus.valueOf(rs.getString("status")))
+            .totalFiles(rs.getInt("total_files"))
+            .processedFiles(rs.getInt("processed_files"))
+            .error(rs.getString("error"))
+            .build();
+
+    private static final RowMapper<IngestionJobFile> FILE_ROW_MAPPER = (rs, rowNum) -> IngestionJobFile.builder()
+            .id(rs.getLong("id"))
+            .jobId(rs.getLong("job_id"))
+            .fileIndex(rs.getInt("file_index"))
+            .filename(rs.getString("filename"))
+            .spoolPath(rs.getString("spool_path"))
+            .ingestionId(rs.getString("ingestion_id"))
+            .status(IngestionFileStatus.valueOf(rs.getString("status")))
+            .windowsDone(rs.getInt("windows_done"))
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public long nextJobId() {
+        String sql = "SELECT nextval(pg_get_serial_sequence('ingestion_job', 'id'))";
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+
+    @Override
+    @Transactional
+    public IngestionJob createJob(Long jobId, Long userId, List<IngestionJobFile> files) {
+        String sql = """
+                INSERT INTO ingestion_job (id, user_id, status, total_files)
+                VALUES (?, ?, ?, ?)
+                RETURNING id, user_id, status, total_files, processed_files, error
+                """;
+        IngestionJob job = jdbcTemplate.queryForObject(sql, JOB_ROW_MAPPER,
+                jobId, userId, IngestionJobStatus.QUEUED.name(), files.size());
+        if (files.isEmpty()) {
+            return job;
+        }
+
+        String filesSql = """
+                INSERT INTO ingestion_job_file (job_id, file_index, filename, spool_path, ingestion_id, status)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """;
+        jdbcTemplate.batchUpdate(filesSql, files, files.size(), (ps, file) -> {
+            ps.setLong(1, file.getJobId());
+            ps.setInt(2, file.getFileIndex());
+            ps.setString(3, file.getFilename());
+            ps.setString(4, file.getSpoolPath());
+            ps.setString(5, file.getIngestionId());
+            ps.setString(6, IngestionFileStatus.PENDING.name());
+        });
+        return job;
+    }
+
+    @Override
+    public Optional<IngestionJob> findJob(Long jobId) {
+        String sql = """
+                SELECT id, user_id, status, total_files, processed_files, error
+                FROM ingestion_job
+                WHERE id = ?
+                """;
+        return jdbcTemplate.query(sql, JOB_ROW_MAPPER, jobId).stream().findFirst();
+    }
+
+    @Override
+    public List<IngestionJob> findByStatusIn(List<IngestionJobStatus> statuses) {
+        String sql = """
+                SELECT id, user_id, status, total_files, processed_files, error
+                FROM ingestion_job
+                WHERE status = ANY (?)
+                ORDER BY id
+                """;
+        return jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql);
+                    ps.setArray(1, con.createArrayOf("varchar",
+                            statuses.stream().map(IngestionJobStatus::name).toArray()));
+                    return ps;
+                },
+                JOB_ROW_MAPPER);
+    }
+
+    @Override
+    public List<IngestionJobFile> findPendingFiles(Long jobId) {
+        String sql = """
+                SELECT id, job_id, file_index, filename, spool_path, ingestion_id, status, windows_done
+                FROM ingestion_job_file
+                WHERE job_id = ? AND status = ?
+                ORDER BY file_index
+                """;
+        return jdbcTemplate.query(sql, FILE_ROW_MAPPER, jobId, IngestionFileStatus.PENDING.name());
+    }
+
+    @Override
+    public List<String> findUnfinishedFilenames(Long userId) {
+        String sql = """
+                SELECT DISTINCT f.filename
+                FROM ingestion_job_file f
+                JOIN ingestion_job j ON j.id = f.job_id
+                WHERE j.user_id = ? AND j.status IN (?, ?)
+                """;
+        return jdbcTemplate.queryForList(sql, String.class, userId,
+                IngestionJobStatus.QUEUED.name(), IngestionJobStatus.RUNNING.name());
+    }
+
+    @Override
+    public void updateStatus(Long jobId, IngestionJobStatus status, String error) {
+        String sql = """
+                UPDATE ingestion_job
+                SET status = ?, error = ?, updated_at = CURRENT_TIMESTAMP
+                WHERE id = ?
+                """;
+        jdbcTemplate.update(sql, status.name(), error, jobId);
+    }
+
+    @Override
+    public void advanceCheckpoint(Long jobFileId, int windowsDone) {
+        String sql = """
+                UPDATE ingestion_job_file
+                SET windows_done = GREATEST(windows_done, ?)
+                WHERE id = ?
+                """;
+        jdbcTemplate.update(sql, windowsDone, jobFileId);
+    }
+
+    @Override
+    public void finishFile(Long jobFileId, IngestionFileStatus status) {
+        String sql = """
+                WITH finished AS (
+                    UPDATE ingestion_job_file
+                    SET status = ?
+                    WHERE id = ? AND status = ?
+                    RETURNING job_id
+                )
+                UPDATE ingestion_job
+                SET processed_files = processed_files + 1, updated_at = CURRENT_TIMESTAMP
+                WHERE id IN (SELECT job_id FROM finished)
+                """;
+        jdbcTemplate.update(sql, status.name(), jobFileId, IngestionFileStatus.PENDING.name());
+    }
+
+    @Override
+    public int deleteFinishedBefore(Instant cutoff) {
+        String sql = """
+                DELETE FROM ingestion_job j
+                WHERE j.status IN (?, ?) AND j.updated_at < ?
+                  AND NOT EXISTS (SELECT 1 FROM knowledge_base_file k WHERE k.job_id = j.id)
+                """;
+        return jdbcTemplate.update(sql, IngestionJobStatus.COMPLETED.name(), IngestionJobStatus.FAILED.name(),
+                Timestamp.from(cutoff));
+    }
+}
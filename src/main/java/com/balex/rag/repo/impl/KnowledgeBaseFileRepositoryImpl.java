@@ -0,0 +1,83 @@
+package com.balex.rag.repo.impl;
+
+import com.balex.rag.model.KnowledgeBaseFile;
+import com.balex.rag.model.enums.IngestionJobStatus;
+import com.balex.rag.repo.KnowledgeBaseFileRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class KnowledgeBaseFileRepositoryImpl implements KnowledgeBaseFileRepository {
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Map<String, KnowledgeBaseFile> findLoaded() {
+        // Rows without a job predate job tracking and were only written after a completed load
+        String sql = """
+                SELECT f.path, f.size, f.modified_millis
+                FROM knowledge_base_file f
+                LEFT JOIN ingestion_job j ON j.id = f.job_id
+                WHERE f.job_id IS NULL OR j.status = ?
+                """;
+        Map<String, KnowledgeBaseFile> files = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            KnowledgeBaseFile file = new KnowledgeBaseFile(
+                    rs.getString("path"),
+                    rs.getLong("size"),
+                    rs.getLong("modified_millis"));
+            files.put(file.path(), file);
+        }, IngestionJobStatus.COMPLETED.name());
+        return files;
+    }
+
+    @Override
+    public List<String> findPaths() {
+        return jdbcTemplate.queryForList("SELECT path FROM knowledge_base_file", String.class);
+    }
+
+    @Override
+    public void saveAll(List<KnowledgeBaseFile> files, Long jobId) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        String sql = """
+                INSERT INTO knowledge_base_file (path, size, modified_millis, job_id)
+                VALUES (?, ?, ?, ?)
+                ON CONFLICT (path) DO UPDATE
+                SET size = EXCLUDED.size, modified_millis = EXCLUDED.modified_millis, job_id = EXCLUDED.job_id,
+                    loaded_at = CURRENT_TIMESTAMP
+                """;
+        jdbcTemplate.batchUpdate(sql, files, INSERT_BATCH_SIZE, (ps, file) -> {
+            ps.setString(1, file.path());
+            ps.setLong(2, file.size());
+            ps.setLong(3, file.modifiedMillis());
+            ps.setLong(4, jobId);
+        });
+    }
+
+    @Override
+    public void deleteAll(Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        String sql = "DELETE FROM knowledge_base_file WHERE path = ANY (?)";
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("varchar", paths.toArray()));
+            return ps;
+        });
+    }
+}
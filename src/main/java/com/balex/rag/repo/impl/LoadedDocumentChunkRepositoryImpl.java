@@ -0,0 +1,51 @@
+package com.balex.rag.repo.impl;
+
+import com.balex.rag.model.ChunkManifestEntry;
+import com.balex.rag.repo.LoadedDocumentChunkRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class LoadedDocumentChunkRepositoryImpl implements LoadedDocumentChunkRepository {
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<ChunkManifestEntry> findByDocumentId(Long documentId) {
+        String sql = """
+                SELECT chunk_index, chunk_id, chunk_hash
+                FROM loaded_document_chunk
+                WHERE document_id = ?
+                ORDER BY chunk_index
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new ChunkManifestEntry(
+                        rs.getInt("chunk_index"),
+                        rs.getString("chunk_id"),
+                        rs.getString("chunk_hash")),
+                documentId);
+    }
+
+    @Override
+    public void saveAll(Long documentId, List<ChunkManifestEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        String sql = """
+                INSERT INTO loaded_document_chunk (document_id, chunk_index, chunk_id, chunk_hash)
+                VALUES (?, ?, ?, ?)
+                """;
+        jdbcTemplate.batchUpdate(sql, entries, INSERT_BATCH_SIZE, (ps, entry) -> {
+            ps.setLong(1, documentId);
+            ps.setInt(2, entry.chunkIndex());
+            ps.setString(3, entry.chunkId());
+            ps.setString(4, entry.chunkHash());
+        });
+    }
+}
@@ -0,0 +1,97 @@
+package com.balex.rag.repo.impl;
+
+import com.balex.rag.model.IndexBuildProgress;
+import com.balex.rag.repo.VectorIndexRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * DDL for the ANN index on vector_store. Index names, access methods and options come
+ * from {@link com.balex.rag.model.enums.VectorIndexType} and numeric properties, never from
+ * user input, so they are formatted into the statements directly.
+ */
+@Repository
+@RequiredArgsConstructor
+public class VectorIndexRepositoryImpl implements VectorIndexRepository {
+
+    private static final String OPERATOR_CLASS = "vector_cosine_ops";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Optional<List<String>> findIndexOptions(String indexName, String accessMethod) {
+        String sql = """
+                SELECT c.reloptions
+                FROM pg_class c
+                JOIN pg_am am ON am.oid = c.relam
+                WHERE c.relname = ? AND c.relkind = 'i' AND am.amname = ?
+                """;
+
+        List<List<String>> options = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Array reloptions = rs.getArray("reloptions");
+            return reloptions == null ? List.<String>of() : Arrays.asList((String[]) reloptions.getArray());
+        }, indexName, accessMethod);
+
+        return options.stream().findFirst();
+    }
+
+    @Override
+    public void createIndexConcurrently(String indexName, String accessMethod, List<String> options) {
+        // CONCURRENTLY keeps vector_store writable while the index builds; it must run outside a transaction
+        String sql = "CREATE INDEX CONCURRENTLY " + indexName
+                + " ON vector_store USING " + accessMethod + " (embedding " + OPERATOR_CLASS + ")"
+                + (options.isEmpty() ? "" : " WITH (" + String.join(", ", options) + ")");
+        jdbcTemplate.execute(sql);
+    }
+
+    @Override
+    public void dropIndexConcurrently(String indexName) {
+        jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+    }
+
+    @Override
+    @Transactional
+    public void swapIndex(String indexName, String newIndexName, String retiredName) {
+        // Renames only take a short lock on the table, unlike DROP INDEX, which waits for open transactions
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS " + indexName + " RENAME TO " + retiredName);
+        jdbcTemplate.execute("ALTER INDEX " + newIndexName + " RENAME TO " + indexName);
+    }
+
+    @Override
+    public Optional<IndexBuildProgress> findBuildProgress() {
+        String sql = """
+                SELECT i.relname AS index_name, p.phase,
+                       p.blocks_done, p.blocks_total, p.tuples_done, p.tuples_total
+                FROM pg_stat_progress_create_index p
+                LEFT JOIN pg_class i ON i.oid = p.index_relid
+                WHERE p.relid = 'vector_store'::regclass
+                """;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            long blocksDone = rs.getLong("blocks_done");
+            long blocksTotal = rs.getLong("blocks_total");
+            long tuplesDone = rs.getLong("tuples_done");
+            long tuplesTotal = rs.getLong("tuples_total");
+
+            long done = blocksTotal > 0 ? blocksDone : tuplesDone;
+            long total = blocksTotal > 0 ? blocksTotal : tuplesTotal;
+
+            return IndexBuildProgress.builder()
+                    .indexName(rs.getString("index_name"))
+                    .phase(rs.getString("phase"))
+                    .blocksDone(blocksDone)
+                    .blocksTotal(blocksTotal)
+                    .tuplesDone(tuplesDone)
+                    .tuplesTotal(tuplesTotal)
+                    .percent(total > 0 ? (int) Math.round((double) done / total * 100) : 0)
+                    .build();
+        }).stream().findFirst();
+    }
+}
@@ -0,0 +1,130 @@
+package com.balex.rag.repo.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.ai.document.Document;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Bulk path for vector_store writes: rows are streamed in Postgres binary COPY format into
+ * a session-local staging table and merged into vector_store with one INSERT ... SELECT.
+ *
+ * Binary COPY skips per-row statement execution and text parsing of the embeddings, which
+ * dominates large loads. The staging table empties on commit, so callers must run inside a
+ * transaction; the COPY uses the connection bound to it.
+ */
+@Component
+@RequiredArgsConstructor
+public class VectorStoreCopyLoader {
+
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final int COPY_BUFFER_BYTES = 1 << 16;
+    private static final short FIELD_COUNT = 4;
+
+    private static final String CREATE_STAGING_SQL = """
+            CREATE TEMP TABLE IF NOT EXISTS vector_store_staging (
+                id        VARCHAR(255),
+                content   TEXT,
+                metadata  JSON,
+                embedding VECTOR
+            ) ON COMMIT DELETE ROWS
+            """;
+
+    private static final String COPY_SQL =
+            "COPY vector_store_staging (id, content, metadata, embedding) FROM STDIN (FORMAT binary)";
+
+    private static final String MERGE_SQL = """
+            INSERT INTO vector_store (id, content, metadata, embedding, pending)
+            SELECT id, content, metadata, embedding, TRUE FROM vector_store_staging
+            ON CONFLICT (id) DO UPDATE
+            SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding,
+                pending = EXCLUDED.pending
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param metadata serialized JSON metadata per chunk
+     */
+    public void load(List<Document> chunks, List<String> metadata, List<float[]> embeddings) {
+        jdbcTemplate.execute(CREATE_STAGING_SQL);
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            CopyIn copyIn = con.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            PGCopyOutputStream copyOut = new PGCopyOutputStream(copyIn, COPY_BUFFER_BYTES);
+            try {
+                DataOutputStream out = new DataOutputStream(copyOut);
+                out.write(COPY_SIGNATURE);
+                out.writeInt(0); // flags
+                out.writeInt(0); // header extension length
+
+                for (int i = 0; i < chunks.size(); i++) {
+                    Document chunk = chunks.get(i);
+                    out.writeShort(FIELD_COUNT);
+                    writeText(out, chunk.getId());
+                    writeText(out, chunk.getText());
+                    // json's binary form is its text
+                    writeText(out, metadata.get(i));
+                    writeVector(out, embeddings.get(i));
+                }
+
+                out.writeShort(-1);
+                // Only a complete stream is ended; closing the stream would end a partial one too
+                copyOut.endCopy();
+            } catch (IOException e) {
+                abort(copyIn, e);
+                throw new DataAccessResourceFailureException("COPY into vector_store_staging failed", e);
+            } catch (RuntimeException e) {
+                abort(copyIn, e);
+                throw e;
+            }
+            return null;
+        });
+
+        jdbcTemplate.update(MERGE_SQL);
+        // Another load in the same transaction must not merge these rows again
+        jdbcTemplate.execute("TRUNCATE vector_store_staging");
+    }
+
+    private static void abort(CopyIn copyIn, Exception cause) {
+        if (!copyIn.isActive()) {
+            return;
+        }
+        try {
+            copyIn.cancelCopy();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // pgvector binary format: int16 dimensions, int16 unused, float4 per dimension
+    private static void writeVector(DataOutputStream out, float[] embedding) throws IOException {
+        out.writeInt(4 + 4 * embedding.length);
+        out.writeShort(embedding.length);
+        out.writeShort(0);
+        for (float value : embedding) {
+            out.writeFloat(value);
+        }
+    }
+}
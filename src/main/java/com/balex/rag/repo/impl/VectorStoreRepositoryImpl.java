@@ -1,36 +1,317 @@
 package com.balex.rag.repo.impl;
 
+import com.balex.rag.advisors.rag.Bm25CorpusIndex;
+import com.balex.rag.config.RagIngestionProperties;
+import com.balex.rag.config.RagKnowledgeBaseProperties;
+import com.balex.rag.config.RagVectorIndexProperties;
 import com.balex.rag.repo.VectorStoreRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
 import lombok.RequiredArgsConstructor;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 @RequiredArgsConstructor
 public class VectorStoreRepositoryImpl implements VectorStoreRepository {
 
+    private static final int CHUNK_FETCH_SIZE = 1000;
+    private static final String DISTANCE_FIELD_NAME = "distance";
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
     private final JdbcTemplate jdbcTemplate;
+    private final Bm25CorpusIndex corpusIndex;
+    private final ObjectMapper objectMapper;
+    private final RagVectorIndexProperties vectorIndexProperties;
+    private final RagIngestionProperties ingestionProperties;
+    private final VectorStoreCopyLoader copyLoader;
+    private final RagKnowledgeBaseProperties knowledgeBaseProperties;
+
+    // Tokens per chunk, used to size the COPY threshold to the ingestion window
+    @Value("${app.document.chunk-size:200}")
+    private int chunkSize;
+
+    @Override
+    public void deleteByUserId(Long userId) {
+        String sql = "DELETE FROM vector_store WHERE user_id = ? RETURNING id";
+        List<String> deletedIds = jdbcTemplate.queryForList(sql, String.class, userId);
+        corpusIndex.removeChunks(deletedIds);
+    }
 
     @Override
-    public void deleteBySourceIn(List<String> sources) {
-        if (sources == null || sources.isEmpty()) {
+    public void deleteByUserIdAndSourceIn(Long userId, Collection<String> sources) {
+        if (sources.isEmpty()) {
             return;
         }
 
-        String placeholders = String.join(",", sources.stream()
-                .map(s -> "?")
-                .toList());
+        String sql = "DELETE FROM vector_store WHERE user_id = ? AND metadata->>'source' = ANY (?) RETURNING id";
+        List<String> deletedIds = jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql);
+                    ps.setLong(1, userId);
+                    ps.setArray(2, con.createArrayOf("varchar", sources.toArray()));
+                    return ps;
+                },
+                (rs, rowNum) -> rs.getString("id"));
+        corpusIndex.removeChunks(deletedIds);
+    }
 
-        String sql = "DELETE FROM vector_store WHERE metadata->>'source' IN (" + placeholders + ")";
+    @Override
+    public void deleteByIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
 
-        jdbcTemplate.update(sql, sources.toArray());
+        String sql = "DELETE FROM vector_store WHERE id = ANY (?) RETURNING id";
+        List<String> deletedIds = jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql);
+                    ps.setArray(1, con.createArrayOf("varchar", ids.toArray()));
+                    return ps;
+                },
+                (rs, rowNum) -> rs.getString("id"));
+        corpusIndex.removeChunks(deletedIds);
     }
 
     @Override
-    public void deleteByUserId(Long userId) {
-        String sql = "DELETE FROM vector_store WHERE (metadata->>'user_id')::bigint = ?";
-        jdbcTemplate.update(sql, userId);
+    public List<Document> publishIngestion(String ingestionId) {
+        String sql = """
+                UPDATE vector_store SET pending = FALSE
+                WHERE pending AND metadata->>'ingestion_id' = ?
+                RETURNING id, metadata::text AS metadata,
+                          CASE WHEN metadata->'bm25_tf' IS NULL THEN content ELSE '' END AS content
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> Document.builder()
+                        .id(rs.getString("id"))
+                        .text(rs.getString("content"))
+                        .metadata(parseMetadata(rs.getString("metadata")))
+                        .build(),
+                ingestionId);
+    }
+
+    @Override
+    public void deleteByIngestionId(String ingestionId) {
+        String sql = "DELETE FROM vector_store WHERE metadata->>'ingestion_id' = ? RETURNING id";
+        List<String> deletedIds = jdbcTemplate.queryForList(sql, String.class, ingestionId);
+        corpusIndex.removeChunks(deletedIds);
+    }
+
+    @Override
+    @Transactional
+    public void insertChunks(List<Document> chunks, List<float[]> embeddings) {
+        if (chunks.size() != embeddings.size()) {
+            throw new InvalidDataAccessApiUsageException(
+                    "Got " + embeddings.size() + " embeddings for " + chunks.size() + " chunks");
+        }
+        if (chunks.isEmpty()) {
+            return;
+        }
+
+        int copyMinChunks = ingestionProperties.effectiveCopyMinChunks(chunkSize);
+        if (copyMinChunks > 0 && chunks.size() >= copyMinChunks) {
+            List<String> metadata = chunks.stream()
+                    .map(chunk -> writeMetadata(chunk.getMetadata()))
+                    .toList();
+            copyLoader.load(chunks, metadata, embeddings);
+            return;
+        }
+
+        String sql = """
+                INSERT INTO vector_store (id, content, metadata, embedding, pending)
+                VALUES (?, ?, ?::json, ?, TRUE)
+                ON CONFLICT (id) DO UPDATE
+                SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding,
+                    pending = EXCLUDED.pending
+                """;
+
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Document chunk = chunks.get(i);
+                ps.setString(1, chunk.getId());
+                ps.setString(2, chunk.getText());
+                ps.setString(3, writeMetadata(chunk.getMetadata()));
+                ps.setObject(4, new PGvector(embeddings.get(i)));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return chunks.size();
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public List<Document> searchSimilar(float[] embedding, Long userId, int topK, double similarityThreshold,
+                                        int searchBreadth) {
+        // Settings are transaction-local, so they only affect this query's connection
+        if (searchBreadth > 0) {
+            jdbcTemplate.queryForObject("SELECT set_config(?, ?, true)", String.class,
+                    vectorIndexProperties.type().getSearchBreadthSetting(), String.valueOf(searchBreadth));
+        }
+        if (vectorIndexProperties.iterativeScan()) {
+            jdbcTemplate.queryForObject("SELECT set_config(?, 'relaxed_order', true)", String.class,
+                    vectorIndexProperties.type().getIterativeScanSetting());
+        }
+
+        // The ANN index is shared by all tenants and the user_id predicate filters its scan
+        // afterwards. A plain scan stops after ef_search candidates, so a tenant with a small
+        // share of the rows can get fewer than topK hits; the iterative scan keeps going
+        // until enough rows pass the filter. Tenants small enough for the planner to prefer
+        // the user_id index are searched exactly. Relaxed order may return the candidates
+        // slightly out of order, so they are sorted again before the threshold applies.
+        String sql = """
+                WITH candidates AS MATERIALIZED (
+                    SELECT id, content, metadata, embedding <=> ? AS distance
+                    FROM vector_store
+                    WHERE user_id IN (?, ?) AND NOT pending
+                    ORDER BY distance
+                    LIMIT ?
+                )
+                SELECT id, content, metadata::text AS metadata, distance
+                FROM candidates
+                WHERE distance < ?
+                ORDER BY distance
+                """;
+
+        PGvector queryVector = new PGvector(embedding);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+                    double distance = rs.getDouble("distance");
+                    Map<String, Object> metadata = parseMetadata(rs.getString("metadata"));
+                    metadata.put(DISTANCE_FIELD_NAME, distance);
+                    return Document.builder()
+                            .id(rs.getString("id"))
+                            .text(rs.getString("content"))
+                            .metadata(metadata)
+                            .score(1.0 - distance)
+                            .build();
+                },
+                queryVector, userId, sharedUserId(userId), topK, 1.0 - similarityThreshold);
+    }
+
+    @Override
+    public List<Document> searchLexical(String query, Long userId, int topK) {
+        // plainto_tsquery and websearch_to_tsquery AND the terms; the query lexemes are ORed
+        // instead so expanded queries still match partially. Each lexeme is quoted by
+        // plainto_tsquery itself, so backslashes and quotes survive; no lexemes give a null query.
+        String sql = """
+                WITH query AS (
+                    SELECT string_agg(term::text, ' | ')::tsquery AS q
+                    FROM unnest(tsvector_to_array(to_tsvector('simple', ?))) AS lexeme,
+                         plainto_tsquery('simple', lexeme) AS term
+                    WHERE numnode(term) > 0
+                )
+                SELECT id, content, metadata::text AS metadata, ts_rank_cd(content_tsv, q) AS rank
+                FROM vector_store, query
+                WHERE user_id IN (?, ?) AND NOT pending AND content_tsv @@ q
+                ORDER BY rank DESC
+                LIMIT ?
+                """;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> Document.builder()
+                        .id(rs.getString("id"))
+                        .text(rs.getString("content"))
+                        .metadata(parseMetadata(rs.getString("metadata")))
+                        .score(rs.getDouble("rank"))
+                        .build(),
+                query, userId, sharedUserId(userId), topK);
+    }
+
+    @Override
+    public Map<String, float[]> findEmbeddingsByChunkHash(Collection<String> chunkHashes, String embeddingModel,
+                                                          int dimensions) {
+        Map<String, float[]> embeddings = new HashMap<>();
+        if (chunkHashes.isEmpty()) {
+            return embeddings;
+        }
+
+        String sql = """
+                SELECT DISTINCT ON (chunk_hash) chunk_hash, embedding::text AS embedding
+                FROM vector_store
+                WHERE chunk_hash = ANY (?)
+                  AND metadata->>'embedding_model' = ?
+                  AND vector_dims(embedding) = ?
+                """;
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql);
+                    ps.setArray(1, con.createArrayOf("varchar", chunkHashes.toArray()));
+                    ps.setString(2, embeddingModel);
+                    ps.setInt(3, dimensions);
+                    return ps;
+                },
+                rs -> {
+                    embeddings.put(rs.getString("chunk_hash"), new PGvector(rs.getString("embedding")).toArray());
+                });
+        return embeddings;
+    }
+
+    @Override
+    public void forEachChunkTerms(ChunkTermsConsumer consumer) {
+        // Term keys are extracted in SQL; content is only shipped for chunks without stored terms
+        String sql = """
+                SELECT id,
+                       ARRAY(SELECT json_object_keys((metadata->'bm25_tf')::json)) AS terms,
+                       COALESCE((metadata->>'bm25_length')::int, 0) AS length,
+                       CASE WHEN metadata->'bm25_tf' IS NULL THEN content END AS content
+                FROM vector_store
+                WHERE NOT pending
+                """;
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql);
+                    ps.setFetchSize(CHUNK_FETCH_SIZE);
+                    return ps;
+                },
+                rs -> {
+                    String content = rs.getString("content");
+                    Array terms = rs.getArray("terms");
+                    consumer.accept(
+                            rs.getString("id"),
+                            content == null ? Arrays.asList((String[]) terms.getArray()) : null,
+                            rs.getInt("length"),
+                            content);
+                });
+    }
+
+    // Knowledge-base chunks are searched along with the user's own; the user again when there is none
+    private Long sharedUserId(Long userId) {
+        Long sharedUserId = knowledgeBaseProperties.sharedUserId();
+        return sharedUserId != null ? sharedUserId : userId;
+    }
+
+    private String writeMetadata(Map<String, Object> metadata) {
+        try {
+            return objectMapper.writeValueAsString(metadata);
+        } catch (JsonProcessingException e) {
+            throw new InvalidDataAccessApiUsageException("Chunk metadata is not serializable", e);
+        }
+    }
+
+    private Map<String, Object> parseMetadata(String json) {
+        if (json == null) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(json, METADATA_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new DataRetrievalFailureException("Invalid vector_store metadata", e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.balex.rag.security.filter;
 
+import com.balex.rag.config.RagSecurityProperties;
 import com.balex.rag.model.constants.ApiErrorMessage;
 import com.balex.rag.security.JwtTokenProvider;
 import io.jsonwebtoken.ExpiredJwtException;
@@ -24,6 +25,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
+import static com.balex.rag.model.constants.ApiConstants.ADMIN_ROLE;
 import static com.balex.rag.model.constants.ApiConstants.USER_ROLE;
 
 @Slf4j
@@ -36,6 +38,7 @@ public class JwtRequestFilter extends OncePerRequestFilter {
     private static final String REGISTER_PATH = "/auth/register";
 
     private final JwtTokenProvider jwtTokenProvider;
+    private final RagSecurityProperties securityProperties;
 
     @Override
     protected void doFilterInternal(
@@ -64,7 +67,9 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 
                 if (emailOpt.isPresent() && userIdOpt.isPresent()) {
                     if (SecurityContextHolder.getContext().getAuthentication() == null) {
-                        List<SimpleGrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority(USER_ROLE));
+                        List<SimpleGrantedAuthority> authorities = isAdmin(userIdOpt.get())
+                                ? List.of(new SimpleGrantedAuthority(USER_ROLE), new SimpleGrantedAuthority(ADMIN_ROLE))
+                                : Collections.singletonList(new SimpleGrantedAuthority(USER_ROLE));
 
                         UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
                                 emailOpt.get(),
@@ -90,6 +95,10 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    private boolean isAdmin(String userId) {
+        return securityProperties.adminUserIds().stream().anyMatch(id -> id.toString().equals(userId));
+    }
+
     private void handleTokenExpiration(String requestURI, String jwt, HttpServletResponse response) throws IOException {
         if (isAuthEndpoint(requestURI)) {
             String refreshedToken = jwtTokenProvider.refreshToken(jwt);
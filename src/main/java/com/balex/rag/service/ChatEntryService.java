@@ -1,6 +1,7 @@
 package com.balex.rag.service;
 
 import com.balex.rag.model.entity.ChatEntry;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -9,4 +10,11 @@ public interface ChatEntryService {
     List<ChatEntry> getEntriesByChatId(Long chatId);
 
     ChatEntry addUserEntry(Long chatId, String content, boolean onlyContext, int topK, double topP);
-}
\ No newline at end of file
+
+    SseEmitter streamUserEntry(Long chatId, String content, boolean onlyContext, int topK, double topP);
+
+    /**
+     * @return false when no answer is being generated for the chat
+     */
+    boolean cancelGeneration(Long chatId);
+}
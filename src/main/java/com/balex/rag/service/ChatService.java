@@ -1,7 +1,7 @@
 package com.balex.rag.service;
 
+import com.balex.rag.model.dto.ChatSummaryDTO;
 import com.balex.rag.model.entity.Chat;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -9,12 +9,10 @@ public interface ChatService {
 
     Chat createNewChat(String title);
 
-    List<Chat> getAllChats();
+    List<ChatSummaryDTO> getAllChats();
 
     Chat getChat(Long chatId);
 
     void deleteChat(Long chatId);
 
-    SseEmitter proceedInteractionWithStreaming(Long chatId, String userPrompt);
-
 }
@@ -0,0 +1,128 @@
+package com.balex.rag.service;
+
+import com.balex.rag.model.entity.Chat;
+import com.balex.rag.model.entity.ChatEntry;
+import com.balex.rag.repo.ChatEntryRepository;
+import com.balex.rag.repo.ChatRepository;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Folds chat entries that fell out of the memory token budget into the chat's running
+ * summary.
+ *
+ * Runs on a virtual thread per chat, at most one at a time, so the model call for the
+ * summary never sits on a request. The summary and the id of the last folded entry are
+ * stored together; a compaction that lost a race with another one is dropped.
+ */
+@Slf4j
+@Builder
+public class ChatSummarizer {
+
+    private static final String PROMPT = """
+            Update the running summary of a conversation with the new messages below.
+            Keep facts, names, numbers, decisions and open questions the user may refer back to.
+            Answer with the updated summary only, in at most %d words.
+
+            Current summary:
+            %s
+
+            New messages:
+            %s
+            """;
+
+    private final ChatModel chatModel;
+    private final ChatRepository chatRepository;
+    private final ChatEntryRepository chatEntryRepository;
+    private final TokenCountEstimator tokenEstimator;
+    private final int maxMessages;
+    private final int tokenBudget;
+    private final int summaryMaxTokens;
+    private final int batchSize;
+
+    private final Set<Long> compacting = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Starts a compaction of the chat unless one is running; {@code onCompacted} runs
+     * once a new summary is stored.
+     */
+    public void requestCompaction(Long chatId, Runnable onCompacted) {
+        if (!compacting.add(chatId)) {
+            return;
+        }
+
+        Thread.ofVirtual().name("chat-summary-" + chatId).start(() -> {
+            try {
+                if (compact(chatId)) {
+                    onCompacted.run();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Summarizing chat {} failed: {}", chatId, e.getMessage());
+            } finally {
+                compacting.remove(chatId);
+            }
+        });
+    }
+
+    private boolean compact(Long chatId) {
+        Chat chat = chatRepository.findById(chatId).orElse(null);
+        if (chat == null) {
+            return false;
+        }
+        long watermark = chat.getSummaryEntryId() == null ? 0 : chat.getSummaryEntryId();
+
+        // Same tail the memory keeps; everything older and not yet summarized is folded
+        List<ChatEntry> newest = chatEntryRepository.findByChatIdAndIdGreaterThanOrderByCreatedAtDesc(
+                chatId, watermark, Limit.of(maxMessages));
+        int keep = PostgresChatMemory.fittingTail(
+                newest.stream().map(entry -> tokens(entry.getContent())).toList(), tokenBudget, maxMessages);
+        if (keep == newest.size() && newest.size() < maxMessages) {
+            return false;
+        }
+        long oldestKept = keep == 0 ? Long.MAX_VALUE : newest.get(keep - 1).getId();
+
+        List<ChatEntry> folded = chatEntryRepository.findByChatIdAndIdGreaterThanAndIdLessThanOrderByCreatedAtAsc(
+                chatId, watermark, oldestKept, Limit.of(batchSize));
+        if (folded.isEmpty()) {
+            return false;
+        }
+
+        String summary = summarize(chat.getSummary(), folded);
+        boolean stored = chatRepository.updateSummary(chatId, summary, folded.getLast().getId(), watermark) == 1;
+        if (stored) {
+            log.debug("Folded {} entries of chat {} into its summary", folded.size(), chatId);
+        }
+        return stored;
+    }
+
+    private String summarize(String previous, List<ChatEntry> entries) {
+        StringBuilder messages = new StringBuilder();
+        for (ChatEntry entry : entries) {
+            messages.append(entry.getRole().name()).append(": ").append(entry.getContent()).append('\n');
+        }
+
+        // Roughly three words per four tokens
+        int maxWords = Math.max(1, summaryMaxTokens * 3 / 4);
+        return ChatClient.create(chatModel).prompt()
+                .user(PROMPT.formatted(maxWords, previous == null ? "(none)" : previous, messages))
+                .options(OllamaOptions.builder()
+                        .temperature(0.0)
+                        .numPredict(summaryMaxTokens)
+                        .build())
+                .call()
+                .content();
+    }
+
+    private int tokens(String text) {
+        return text == null || text.isEmpty() ? 0 : tokenEstimator.estimate(text);
+    }
+}
@@ -0,0 +1,44 @@
+package com.balex.rag.service;
+
+import com.balex.rag.model.IngestionJob;
+import com.balex.rag.model.UploadProgress;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public interface IngestionJobService {
+
+    /**
+     * Spools the uploads, records a job for them and starts it in the background.
+     */
+    IngestionJob submit(List<MultipartFile> files, Long userId);
+
+    /**
+     * Same as {@link #submit} for files on the local file system, keyed by the filename
+     * the documents are stored under.
+     */
+    IngestionJob submitLocal(Map<String, Path> files, Long userId);
+
+    /**
+     * Removes the user's documents stored under the given filenames, with their chunks.
+     */
+    void removeLocal(Collection<String> filenames, Long userId);
+
+    /**
+     * @return filenames of the user that queued or running jobs still have to process
+     */
+    Set<String> findUnfinishedFilenames(Long userId);
+
+    /**
+     * Sends the current progress of a job of the user to the subscriber and then every
+     * update until the job finishes. A subscriber that throws is dropped.
+     *
+     * @return cancels the subscription; the job itself keeps running
+     */
+    Runnable subscribe(Long jobId, Long userId, Consumer<UploadProgress> subscriber);
+}
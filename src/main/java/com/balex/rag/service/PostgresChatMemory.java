@@ -1,51 +1,198 @@
 package com.balex.rag.service;
 
+import com.balex.rag.cache.LruCache;
+import com.balex.rag.cache.LruCacheMetrics;
 import com.balex.rag.model.entity.Chat;
 import com.balex.rag.model.entity.ChatEntry;
+import com.balex.rag.model.enums.Role;
+import com.balex.rag.repo.ChatEntryRepository;
 import com.balex.rag.repo.ChatRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Builder;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.data.domain.Limit;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
-@Builder
+/**
+ * Windowed, token-budgeted chat memory.
+ *
+ * A miss loads the last {@code maxMessages} entries after the chat's summary watermark with
+ * one indexed query on (chat_id, created_at DESC); after that the window lives in a
+ * per-conversation ring buffer and follows the messages the memory advisor adds. Entries
+ * are persisted by the chat services, not here; an unanswered question at the end of the
+ * chat is left out of a loaded window, since it is the one being asked.
+ *
+ * Every turn gets the chat's running summary plus as many of the newest entries as fit in
+ * {@code tokenBudget}. Entries that no longer fit are left to {@link ChatSummarizer}, which
+ * folds them into the summary in the background and drops the cached window afterwards.
+ * Entries only pushed out by {@code maxMessages} are folded once {@code summaryMinEvicted}
+ * of them piled up, so a full window alone does not start a compaction every turn.
+ */
 public class PostgresChatMemory implements ChatMemory {
 
-    private ChatRepository chatMemoryRepository;
+    public static final String CACHE_NAME = "chat-memory";
 
-    private int maxMessages;
+    private static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
 
-    @Override
-    public void add(String conversationId, List<Message> messages) {
-//        Chat chat = chatMemoryRepository.findById(Long.valueOf(conversationId)).orElseThrow();
-//        for (Message message : messages) {
-//            chat.addChatEntry(ChatEntry.toChatEntry(message));
-//        }
-//        chatMemoryRepository.save(chat);
-
-        // No-op: messages are saved manually in ChatEntryServiceImpl
+    private final ChatRepository chatRepository;
+    private final ChatEntryRepository chatEntryRepository;
+    private final TokenCountEstimator tokenEstimator;
+    // Null when summaries are disabled; entries beyond the budget are then just left out
+    private final ChatSummarizer summarizer;
+    private final int maxMessages;
+    private final int tokenBudget;
+    private final int summaryMinEvicted;
+    private final LruCache<String, MessageWindow> windows;
 
+    @Builder
+    private PostgresChatMemory(ChatRepository chatRepository, ChatEntryRepository chatEntryRepository,
+                               TokenCountEstimator tokenEstimator, ChatSummarizer summarizer,
+                               int maxMessages, int tokenBudget, int summaryMinEvicted, int maxConversations,
+                               Duration ttl, MeterRegistry meterRegistry) {
+        this.chatRepository = chatRepository;
+        this.chatEntryRepository = chatEntryRepository;
+        this.tokenEstimator = tokenEstimator;
+        this.summarizer = summarizer;
+        this.maxMessages = maxMessages;
+        this.tokenBudget = tokenBudget;
+        this.summaryMinEvicted = Math.max(1, summaryMinEvicted);
+        this.windows = new LruCache<>(maxConversations, ttl);
+        if (meterRegistry != null) {
+            LruCacheMetrics.monitor(meterRegistry, windows, CACHE_NAME);
+        }
     }
 
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        // A conversation that is not cached is read from the database on its next turn
+        MessageWindow window = windows.get(conversationId);
+        if (window != null) {
+            window.addAll(messages.stream()
+                    .map(message -> new WindowEntry(message, tokens(message.getText())))
+                    .toList());
+        }
+    }
 
     @Override
     public List<Message> get(String conversationId) {
-        Chat chat = chatMemoryRepository.findById(Long.valueOf(conversationId)).orElseThrow();
-        Long messagesToSkip= (long) Math.max(0, chat.getHistory().size() - maxMessages);
-        return chat.getHistory().stream()
-                .skip(messagesToSkip)
-                //.sorted(Comparator.comparing(ChatEntry::getCreatedAt))
-                //.sorted(Comparator.comparing(ChatEntry::getCreatedAt).reversed())
-                .map(ChatEntry::toMessage)
-                .limit(maxMessages)
-                .toList();
+        MessageWindow window = windows.get(conversationId);
+        if (window == null) {
+            window = load(Long.valueOf(conversationId));
+            windows.put(conversationId, window);
+        }
 
+        MessageWindow.Packed packed = window.pack(tokenBudget, summaryMinEvicted);
+        if (packed.overflowing() && summarizer != null) {
+            summarizer.requestCompaction(Long.valueOf(conversationId), () -> windows.invalidate(conversationId));
+        }
+        return packed.messages();
     }
 
     @Override
     public void clear(String conversationId) {
-        //not implemented
+        windows.invalidate(conversationId);
     }
-}
 
+    /**
+     * Number of entries, newest first, that fit in the token budget and the message limit.
+     * A budget of zero or less only applies the limit.
+     */
+    static int fittingTail(List<Integer> tokensNewestFirst, int tokenBudget, int maxMessages) {
+        int limit = Math.min(maxMessages, tokensNewestFirst.size());
+        if (tokenBudget <= 0) {
+            return limit;
+        }
+
+        int used = 0;
+        for (int i = 0; i < limit; i++) {
+            used += tokensNewestFirst.get(i);
+            if (used > tokenBudget) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    int tokens(String text) {
+        return text == null || text.isEmpty() ? 0 : tokenEstimator.estimate(text);
+    }
+
+    private MessageWindow load(Long chatId) {
+        Chat chat = chatRepository.findById(chatId).orElseThrow();
+        long watermark = chat.getSummaryEntryId() == null ? 0 : chat.getSummaryEntryId();
+        Message summary = chat.getSummary() == null ? null : new SystemMessage(SUMMARY_PREFIX + chat.getSummary());
+
+        List<ChatEntry> latest = chatEntryRepository.findByChatIdAndIdGreaterThanOrderByCreatedAtDesc(
+                chatId, watermark, Limit.of(maxMessages));
+
+        // The chat services persist the question before generating; the memory advisor adds it itself
+        if (!latest.isEmpty() && latest.getFirst().getRole() == Role.USER) {
+            latest = latest.subList(1, latest.size());
+        }
+
+        MessageWindow window = new MessageWindow(maxMessages, summary);
+        window.addAll(latest.reversed().stream()
+                .map(entry -> new WindowEntry(entry.toMessage(), tokens(entry.getContent())))
+                .toList());
+        return window;
+    }
+
+    private record WindowEntry(Message message, int tokens) {
+    }
+
+    /**
+     * Ring buffer of the most recent messages of one conversation and its summary.
+     */
+    private static final class MessageWindow {
+
+        private final int capacity;
+        private final Message summary;
+        private final Deque<WindowEntry> entries;
+        // Unsummarized entries the ring dropped since the window was loaded
+        private int evicted;
+
+        private MessageWindow(int capacity, Message summary) {
+            this.capacity = capacity;
+            this.summary = summary;
+            this.entries = new ArrayDeque<>(capacity);
+        }
+
+        private synchronized void addAll(List<WindowEntry> added) {
+            for (WindowEntry entry : added) {
+                if (entries.size() == capacity) {
+                    entries.removeFirst();
+                    evicted++;
+                }
+                entries.addLast(entry);
+            }
+        }
+
+        private synchronized Packed pack(int tokenBudget, int minEvicted) {
+            List<WindowEntry> newestFirst = new ArrayList<>(entries).reversed();
+            int keep = fittingTail(newestFirst.stream().map(WindowEntry::tokens).toList(), tokenBudget, capacity);
+
+            List<Message> messages = new ArrayList<>(keep + 1);
+            if (summary != null) {
+                messages.add(summary);
+            }
+            for (int i = keep - 1; i >= 0; i--) {
+                messages.add(newestFirst.get(i).message());
+            }
+
+            // Over the token budget, or enough entries fell out of the ring unsummarized
+            boolean overflowing = keep < entries.size() || evicted >= minEvicted;
+            return new Packed(messages, overflowing);
+        }
+
+        private record Packed(List<Message> messages, boolean overflowing) {
+        }
+    }
+}
@@ -7,4 +7,6 @@ import java.util.List;
 
 public interface UserDocumentService {
     SseEmitter processUploadedFilesWithSse(List<MultipartFile> files, Long userId);
-}
\ No newline at end of file
+
+    SseEmitter attachToJob(Long jobId, Long userId);
+}
@@ -0,0 +1,14 @@
+package com.balex.rag.service;
+
+import com.balex.rag.model.IndexBuildProgress;
+
+import java.util.Optional;
+
+public interface VectorIndexService {
+
+    void ensureIndex();
+
+    boolean rebuildIndex();
+
+    Optional<IndexBuildProgress> getBuildProgress();
+}
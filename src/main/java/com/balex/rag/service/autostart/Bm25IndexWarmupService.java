@@ -0,0 +1,61 @@
+package com.balex.rag.service.autostart;
+
+import com.balex.rag.advisors.rag.Bm25CorpusIndex;
+import com.balex.rag.repo.VectorStoreRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the published chunks already in vector_store into the BM25 corpus index on startup,
+ * in the background; reranking uses candidate statistics until it is done.
+ *
+ * Runs inside a read-only transaction so the JDBC driver streams rows with the fetch size.
+ * Chunks deleted while the warm-up streams are kept out by the index itself.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class Bm25IndexWarmupService {
+
+    private final VectorStoreRepository vectorStoreRepository;
+    private final Bm25CorpusIndex corpusIndex;
+    private final PlatformTransactionManager transactionManager;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpOnStartup() {
+        Thread.ofVirtual().name("bm25-warmup").start(() -> {
+            try {
+                warmUp();
+            } catch (Exception e) {
+                log.error("BM25 corpus index warm-up failed", e);
+            }
+        });
+    }
+
+    public void warmUp() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        AtomicInteger loaded = new AtomicInteger();
+        corpusIndex.beginWarmUp();
+        readOnly.executeWithoutResult(status ->
+                vectorStoreRepository.forEachChunkTerms((id, terms, length, content) -> {
+                    if (terms != null) {
+                        corpusIndex.loadChunk(id, terms, length);
+                    } else {
+                        corpusIndex.loadChunk(id, content);
+                    }
+                    loaded.incrementAndGet();
+                }));
+
+        corpusIndex.markReady();
+        log.info("BM25 corpus index warmed up with {} chunks", loaded.get());
+    }
+}
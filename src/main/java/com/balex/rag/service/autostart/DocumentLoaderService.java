@@ -1,85 +1,143 @@
-//package com.balex.rag.service.autostart;
-//
-//import com.balex.rag.model.LoadedDocument;
-//import com.balex.rag.repo.DocumentRepository;
-//import lombok.SneakyThrows;
-//import org.springframework.ai.document.Document;
-//import org.springframework.ai.reader.TextReader;
-//import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-//import org.springframework.ai.vectorstore.VectorStore;
-//import org.springframework.beans.factory.annotation.Autowired;
-//import org.springframework.boot.CommandLineRunner;
-//import org.springframework.core.io.Resource;
-//import org.springframework.core.io.support.ResourcePatternResolver;
-//import org.springframework.data.util.Pair;
-//import org.springframework.stereotype.Service;
-//import org.springframework.util.DigestUtils;
-//
-//import java.util.Arrays;
-//import java.util.List;
-//
-//@Service
-//public class DocumentLoaderService implements CommandLineRunner {
-//
-//    @Autowired
-//    private DocumentRepository documentRepository;
-//
-//    @Autowired
-//    private ResourcePatternResolver resolver;
-//
-//    @Autowired
-//    private VectorStore vectorStore;
-//
-//
-//    @SneakyThrows
-//    public void loadDocuments() {
-//        List<Resource> resources = Arrays.stream(resolver.getResources("classpath:/knowledgebase/**/*.txt")).toList();
-//
-//        resources.stream()
-//                .map(r -> Pair.of(r, calcContentHash(r)))
-//                .filter(p -> !documentRepository.existsByFilenameAndContentHash(p.getFirst().getFilename(), p.getSecond()))
-//                .forEach(p -> {
-//                    Resource resource = p.getFirst();
-//                    List<Document> docs = new TextReader(resource).get();
-//                    TokenTextSplitter splitter = TokenTextSplitter.builder().withChunkSize(200).build();
-//                    List<Document> chunks = splitter.apply(docs);
-//
-//                    for (Document c : chunks) {
-//                        acceptWithRetry(vectorStore, List.of(c), 3, 1500);
-//                    }
-//
-//                    LoadedDocument loaded = LoadedDocument.builder()
-//                            .documentType("txt")
-//                            .chunkCount(chunks.size())
-//                            .filename(resource.getFilename())
-//                            .contentHash(p.getSecond())
-//                            .build();
-//                    documentRepository.save(loaded);
-//                });
-//
-//    }
-//
-//    private static void acceptWithRetry(VectorStore vs, List<Document> part, int attempts, long sleepMs) {
-//        RuntimeException last = null;
-//        for (int i = 0; i < attempts; i++) {
-//            try {
-//                vs.accept(part);
-//                return;
-//            } catch (RuntimeException e) {
-//                last = e;
-//                try { Thread.sleep(sleepMs); } catch (InterruptedException ignored) {}
-//            }
-//        }
-//        throw last;
-//    }
-//
-//    @SneakyThrows
-//    private String calcContentHash(Resource resource) {
-//        return DigestUtils.md5DigestAsHex(resource.getInputStream());
-//    }
-//
-//    @Override
-//    public void run(String... args) {
-//        loadDocuments();
-//    }
-//}
+package com.balex.rag.service.autostart;
+
+import com.balex.rag.config.RagKnowledgeBaseProperties;
+import com.balex.rag.model.IngestionJob;
+import com.balex.rag.model.KnowledgeBaseFile;
+import com.balex.rag.repo.KnowledgeBaseFileRepository;
+import com.balex.rag.service.IngestionJobService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads the knowledge-base directory on startup, in the background.
+ *
+ * Files whose size and modification time match the manifest of the last load are skipped
+ * without being read. Changed files are submitted as ingestion jobs of
+ * {@code batchFiles} each, which run in parallel and resume after a restart like uploads.
+ * The manifest records each file with the job that loads it, so a file counts as loaded
+ * only once that job completed: failed jobs are retried on the next start, and files of
+ * jobs that are still queued or running are left to the resumed job.
+ *
+ * Files that disappeared from the directory are removed from the store and the manifest.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocumentLoaderService {
+
+    private final KnowledgeBaseFileRepository knowledgeBaseFileRepository;
+    private final IngestionJobService ingestionJobService;
+    private final RagKnowledgeBaseProperties properties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!properties.enabled()) {
+            return;
+        }
+        if (properties.ownerUserId() == null) {
+            log.warn("Knowledge base is enabled but rag.knowledge-base.owner-user-id is not set, skipping load");
+            return;
+        }
+
+        Thread.ofVirtual().name("knowledge-base-loader").start(() -> {
+            try {
+                loadDocuments();
+            } catch (Exception e) {
+                log.error("Knowledge base load failed", e);
+            }
+        });
+    }
+
+    public void loadDocuments() throws IOException {
+        Path root = properties.directory();
+        if (!Files.isDirectory(root)) {
+            log.warn("Knowledge base directory {} does not exist", root.toAbsolutePath());
+            return;
+        }
+
+        Set<String> unfinished = ingestionJobService.findUnfinishedFilenames(properties.ownerUserId());
+        Set<String> present = new HashSet<>();
+        List<Map.Entry<KnowledgeBaseFile, Path>> changed = findChanged(root, unfinished, present);
+        log.info("Knowledge base: {} new or changed files in {}", changed.size(), root.toAbsolutePath());
+
+        removeDeleted(present, unfinished);
+
+        int batchFiles = Math.max(1, properties.batchFiles());
+        for (int from = 0; from < changed.size(); from += batchFiles) {
+            submit(changed.subList(from, Math.min(changed.size(), from + batchFiles)));
+        }
+    }
+
+    private List<Map.Entry<KnowledgeBaseFile, Path>> findChanged(Path root, Set<String> unfinished,
+                                                                 Set<String> present) throws IOException {
+        Map<String, KnowledgeBaseFile> loaded = knowledgeBaseFileRepository.findLoaded();
+        PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + properties.pattern());
+        List<Map.Entry<KnowledgeBaseFile, Path>> changed = new ArrayList<>();
+
+        // The walk hands over the attributes it already read, so unchanged files cost no extra I/O
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                Path relative = root.relativize(file);
+                if (!attrs.isRegularFile() || !matcher.matches(relative)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                KnowledgeBaseFile current = new KnowledgeBaseFile(
+                        relative.toString().replace(File.separatorChar, '/'),
+                        attrs.size(),
+                        attrs.lastModifiedTime().toMillis());
+                present.add(current.path());
+                if (!unfinished.contains(current.path()) && !current.equals(loaded.get(current.path()))) {
+                    changed.add(Map.entry(current, file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return changed;
+    }
+
+    private void removeDeleted(Set<String> present, Set<String> unfinished) {
+        List<String> deleted = knowledgeBaseFileRepository.findPaths().stream()
+                .filter(path -> !present.contains(path) && !unfinished.contains(path))
+                .toList();
+        if (deleted.isEmpty()) {
+            return;
+        }
+
+        ingestionJobService.removeLocal(deleted, properties.ownerUserId());
+        knowledgeBaseFileRepository.deleteAll(deleted);
+        log.info("Knowledge base: removed {} deleted files", deleted.size());
+    }
+
+    private void submit(List<Map.Entry<KnowledgeBaseFile, Path>> batch) {
+        Map<String, Path> files = new LinkedHashMap<>();
+        List<KnowledgeBaseFile> manifest = new ArrayList<>(batch.size());
+        for (Map.Entry<KnowledgeBaseFile, Path> entry : batch) {
+            files.put(entry.getKey().path(), entry.getValue());
+            manifest.add(entry.getKey());
+        }
+
+        IngestionJob job = ingestionJobService.submitLocal(files, properties.ownerUserId());
+        knowledgeBaseFileRepository.saveAll(manifest, job.getId());
+        log.info("Knowledge base job {} submitted with {} files", job.getId(), manifest.size());
+    }
+}
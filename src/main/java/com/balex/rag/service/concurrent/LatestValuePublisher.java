@@ -0,0 +1,86 @@
+package com.balex.rag.service.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Fans values out to any number of subscribers without ever blocking the publisher.
+ *
+ * Each subscriber has a one-slot mailbox holding the newest value it has not seen yet,
+ * drained by a virtual thread of its own. A slow subscriber skips intermediate values
+ * instead of holding up the publisher or other subscribers; the last value published is
+ * always the last one it receives. A subscriber that throws is dropped.
+ */
+@Slf4j
+public final class LatestValuePublisher<T> {
+
+    private final String name;
+    private final List<Mailbox> mailboxes = new CopyOnWriteArrayList<>();
+    private T latest;
+
+    public LatestValuePublisher(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Subscribes and hands over the latest value, if any.
+     *
+     * @return removes the subscription
+     */
+    public synchronized Runnable subscribe(Consumer<T> subscriber) {
+        Mailbox mailbox = new Mailbox(subscriber);
+        mailboxes.add(mailbox);
+        if (latest != null) {
+            mailbox.offer(latest);
+        }
+        return () -> mailboxes.remove(mailbox);
+    }
+
+    // Only swaps references and starts drain threads; never waits on a subscriber
+    public synchronized void publish(T value) {
+        latest = value;
+        for (Mailbox mailbox : mailboxes) {
+            mailbox.offer(value);
+        }
+    }
+
+    private final class Mailbox {
+
+        private final Consumer<T> subscriber;
+        private final AtomicReference<T> pending = new AtomicReference<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Mailbox(Consumer<T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        private void offer(T value) {
+            pending.set(value);
+            if (draining.compareAndSet(false, true)) {
+                Thread.ofVirtual().name(name + "-subscriber").start(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                for (T value = pending.getAndSet(null); value != null; value = pending.getAndSet(null)) {
+                    try {
+                        subscriber.accept(value);
+                    } catch (RuntimeException e) {
+                        // Stays marked as draining, so later offers start no threads
+                        log.debug("Dropping {} subscriber: {}", name, e.getMessage());
+                        mailboxes.remove(this);
+                        return;
+                    }
+                }
+                draining.set(false);
+                // A value offered between the last poll and the reset would otherwise wait for the next offer
+            } while (pending.get() != null && draining.compareAndSet(false, true));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.balex.rag.service.concurrent;
+
+import com.balex.rag.config.RagTaskExecutorProperties;
+import com.balex.rag.model.enums.UserTaskKind;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs long user tasks (document uploads, chat streams) off the common pool.
+ *
+ * Each user gets at most {@code maxTasksPerUser} running uploads and
+ * {@code maxChatStreamsPerUser} running chat streams; further tasks wait in a per-user,
+ * per-kind queue and are started as earlier ones of the same kind finish, so waiting never
+ * holds a thread, one user cannot take the whole executor and an upload never delays a
+ * chat answer.
+ */
+@Slf4j
+@Component
+public class UserTaskExecutor implements DisposableBean {
+
+    private static final String THREAD_NAME_PREFIX = "rag-task-";
+
+    private final ExecutorService executor;
+    private final Map<UserTaskKind, Integer> maxTasksPerUser;
+    private final Map<SlotKey, UserTasks> users = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public UserTaskExecutor(RagTaskExecutorProperties properties, MeterRegistry meterRegistry) {
+        this.maxTasksPerUser = Map.of(
+                UserTaskKind.INGESTION, Math.max(1, properties.maxTasksPerUser()),
+                UserTaskKind.CHAT_STREAM, Math.max(1, properties.maxChatStreamsPerUser()));
+        this.executor = switch (properties.type()) {
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name(THREAD_NAME_PREFIX, 0).factory());
+            case PLATFORM -> new ThreadPoolExecutor(
+                    properties.poolSize(), properties.poolSize(), 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(properties.queueCapacity()),
+                    Thread.ofPlatform().name(THREAD_NAME_PREFIX, 0).factory());
+        };
+
+        Tags tags = Tags.of("executor", properties.type().name().toLowerCase());
+        Gauge.builder("rag.tasks.active", active, AtomicInteger::get)
+                .tags(tags)
+                .description("User tasks currently running")
+                .register(meterRegistry);
+        Gauge.builder("rag.tasks.waiting", waiting, AtomicInteger::get)
+                .tags(tags)
+                .description("User tasks waiting for a per-user slot")
+                .register(meterRegistry);
+        Gauge.builder("rag.tasks.queued", executor, UserTaskExecutor::executorQueueSize)
+                .tags(tags)
+                .description("Tasks queued for a pool thread")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the task now if the user has a free slot of that kind, otherwise after one of the
+     * user's running tasks of the same kind finishes.
+     *
+     * @param onRejected called instead of the task when it waited for a slot and the platform
+     *                   pool queue was full by the time it got one; there is no caller left to
+     *                   throw to then
+     * @throws RejectedExecutionException when the platform pool queue is full right away
+     */
+    public void execute(UserTaskKind kind, Long userId, Runnable task,
+                        Consumer<RejectedExecutionException> onRejected) {
+        SlotKey slot = new SlotKey(kind, userId);
+        int limit = maxTasksPerUser.get(kind);
+        boolean[] start = new boolean[1];
+        users.compute(slot, (key, tasks) -> {
+            UserTasks state = tasks != null ? tasks : new UserTasks();
+            if (state.running < limit) {
+                state.running++;
+                start[0] = true;
+            } else {
+                state.waiting.add(new QueuedTask(task, onRejected));
+                waiting.incrementAndGet();
+            }
+            return state;
+        });
+
+        if (start[0]) {
+            dispatch(slot, task);
+        } else {
+            log.debug("User {} already runs {} {} tasks, task queued", userId, limit, kind);
+        }
+    }
+
+    private void dispatch(SlotKey slot, Runnable task) {
+        try {
+            executor.execute(() -> {
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("{} task failed for user: {}", slot.kind(), slot.userId(), e);
+                } finally {
+                    active.decrementAndGet();
+                    onFinished(slot);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            onFinished(slot);
+            throw e;
+        }
+    }
+
+    private void onFinished(SlotKey slot) {
+        QueuedTask[] next = new QueuedTask[1];
+        users.computeIfPresent(slot, (key, state) -> {
+            QueuedTask queued = state.waiting.poll();
+            if (queued != null) {
+                // The slot passes straight to the next task of the same user
+                waiting.decrementAndGet();
+                next[0] = queued;
+                return state;
+            }
+            state.running--;
+            return state.running == 0 ? null : state;
+        });
+
+        if (next[0] != null) {
+            try {
+                dispatch(slot, next[0].task());
+            } catch (RejectedExecutionException e) {
+                log.error("Queued {} task of user {} was rejected by the executor", slot.kind(), slot.userId(), e);
+                try {
+                    next[0].onRejected().accept(e);
+                } catch (RuntimeException callbackFailure) {
+                    log.error("Rejection handler of {} task failed for user: {}", slot.kind(), slot.userId(),
+                            callbackFailure);
+                }
+            }
+        }
+    }
+
+    private static double executorQueueSize(ExecutorService executor) {
+        return executor instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    // Each kind has its own slots, so long uploads never hold up a user's chat streams
+    private record SlotKey(UserTaskKind kind, Long userId) {
+    }
+
+    private record QueuedTask(Runnable task, Consumer<RejectedExecutionException> onRejected) {
+    }
+
+    private static final class UserTasks {
+        private int running;
+        private final Queue<QueuedTask> waiting = new ArrayDeque<>();
+    }
+}
@@ -1,81 +1,196 @@
 package com.balex.rag.service.impl;
 
+import com.balex.rag.advisors.rag.RagAdvisor;
+import com.balex.rag.config.RagChatStreamProperties;
+import com.balex.rag.model.constants.ApiErrorMessage;
 import com.balex.rag.model.entity.Chat;
 import com.balex.rag.model.entity.ChatEntry;
 import com.balex.rag.model.enums.Role;
+import com.balex.rag.model.enums.UserTaskKind;
+import com.balex.rag.model.exception.NotFoundException;
 import com.balex.rag.repo.ChatEntryRepository;
 import com.balex.rag.repo.ChatRepository;
+import com.balex.rag.security.validation.AccessValidator;
 import com.balex.rag.service.ChatEntryService;
-import jakarta.persistence.EntityNotFoundException;
+import com.balex.rag.service.concurrent.UserTaskExecutor;
+import com.balex.rag.service.stream.TextDeltaSseWriter;
+import com.balex.rag.utils.ApiUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.ollama.api.OllamaOptions;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
+/**
+ * Chat turns run without a surrounding transaction: the question and the answer are saved
+ * in short transactions of their own before and after generation, so no connection is held
+ * while the model generates.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ChatEntryServiceImpl implements ChatEntryService {
 
+    private static final String EVENT_ENTRY = "entry";
+
+    private static final String ONLY_CONTEXT_PROMPT = """
+            The question may be about a CONSEQUENCE of a fact from Context.
+            ALWAYS connect: Context fact → question.
+            No connection, even indirect = answer ONLY: "The request is not related to the uploaded context."
+            Connection exists = answer using ONLY the context.
+            Do NOT use any knowledge outside the provided context.
+            """;
+
+    private static final String CONTEXT_FIRST_PROMPT = """
+            The question may be about a CONSEQUENCE of a fact from Context.
+            ALWAYS connect: Context fact → question.
+            If context contains relevant information, use it in your answer.
+            If context does not contain relevant information, answer using your general knowledge.
+            """;
+
     private final ChatEntryRepository chatEntryRepository;
     private final ChatRepository chatRepository;
     private final ChatClient chatClient;
+    private final ChatMemory chatMemory;
+    private final UserTaskExecutor userTaskExecutor;
+    private final RagChatStreamProperties streamProperties;
+    private final AccessValidator accessValidator;
+    private final ApiUtils apiUtils;
+
+    // Streamed answers being generated, by chat
+    private final Map<Long, TextDeltaSseWriter> generations = new ConcurrentHashMap<>();
 
     @Override
     public List<ChatEntry> getEntriesByChatId(Long chatId) {
+        findOwnedChat(chatId);
         return chatEntryRepository.findByChatIdOrderByCreatedAtAsc(chatId);
     }
 
     @Override
-    @Transactional
     public ChatEntry addUserEntry(Long chatId, String content, boolean onlyContext, int topK, double topP) {
-        Chat chat = chatRepository.findById(chatId)
-                .orElseThrow(() -> new EntityNotFoundException("Chat not found with id: " + chatId));
+        Chat chat = findOwnedChat(chatId);
+        saveEntry(chat, Role.USER, content);
 
-        ChatEntry userEntry = ChatEntry.builder()
-                .chat(chat)
-                .content(content)
-                .role(Role.USER)
-                .build();
-        chatEntryRepository.save(userEntry);
-
-        String systemPrompt = onlyContext
-                ? """
-                  The question may be about a CONSEQUENCE of a fact from Context.
-                  ALWAYS connect: Context fact → question.
-                  No connection, even indirect = answer ONLY: "The request is not related to the uploaded context."
-                  Connection exists = answer using ONLY the context.
-                  Do NOT use any knowledge outside the provided context.
-                  """
-                : """
-                  The question may be about a CONSEQUENCE of a fact from Context.
-                  ALWAYS connect: Context fact → question.
-                  If context contains relevant information, use it in your answer.
-                  If context does not contain relevant information, answer using your general knowledge.
-                  """;
-
-        String response = chatClient.prompt()
-                .system(systemPrompt)
+        String response = prompt(chat, content, onlyContext, topK, topP)
+                .call()
+                .content();
+
+        return saveEntry(chat, Role.ASSISTANT, response);
+    }
+
+    @Override
+    public SseEmitter streamUserEntry(Long chatId, String content, boolean onlyContext, int topK, double topP) {
+        Chat chat = findOwnedChat(chatId);
+        saveEntry(chat, Role.USER, content);
+
+        SseEmitter emitter = new SseEmitter(0L);
+        TextDeltaSseWriter writer = new TextDeltaSseWriter(emitter, streamProperties);
+        // A new question in the same chat stops the answer still being generated
+        TextDeltaSseWriter previous = generations.put(chatId, writer);
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        // Drained on one of the caller's chat stream slots, not on reactor or common pool threads
+        Long callerId = apiUtils.getUserIdFromAuthentication().longValue();
+        // Never runs: nothing to cancel, and the emitter has no timeout that would end it
+        Consumer<RejectedExecutionException> rejected = e -> {
+            log.warn("Answer stream in chat {} was rejected by the task executor", chatId);
+            generations.remove(chatId, writer);
+            emitter.completeWithError(e);
+        };
+        try {
+            userTaskExecutor.execute(UserTaskKind.CHAT_STREAM, callerId,
+                    () -> generate(chat, content, onlyContext, topK, topP, emitter, writer), rejected);
+        } catch (RejectedExecutionException e) {
+            rejected.accept(e);
+        }
+        return emitter;
+    }
+
+    @Override
+    public boolean cancelGeneration(Long chatId) {
+        findOwnedChat(chatId);
+        TextDeltaSseWriter writer = generations.remove(chatId);
+        if (writer == null) {
+            return false;
+        }
+        writer.cancel();
+        return true;
+    }
+
+    private void generate(Chat chat, String content, boolean onlyContext, int topK, double topP,
+                          SseEmitter emitter, TextDeltaSseWriter writer) {
+        RuntimeException failure = null;
+        try {
+            writer.write(prompt(chat, content, onlyContext, topK, topP).stream().content());
+        } catch (RuntimeException e) {
+            log.warn("Generating an answer in chat {} failed: {}", chat.getId(), e.getMessage());
+            failure = e;
+        } finally {
+            generations.remove(chat.getId(), writer);
+        }
+
+        boolean finished = failure == null && !writer.isCancelled();
+        if (!finished) {
+            // The memory advisor records complete answers only; reload the window from the saved entries
+            chatMemory.clear(String.valueOf(chat.getId()));
+        }
+
+        try {
+            String answer = writer.text();
+            ChatEntry entry = answer.isEmpty() ? null : saveEntry(chat, Role.ASSISTANT, answer);
+            if (failure != null) {
+                emitter.completeWithError(failure);
+                return;
+            }
+            if (finished && entry != null) {
+                writer.send(EVENT_ENTRY, entry);
+            }
+            // Also ends streams cancelled on the server side; a no-op once the client is gone
+            emitter.complete();
+        } catch (RuntimeException e) {
+            log.warn("Saving the answer in chat {} failed: {}", chat.getId(), e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+
+    private ChatClient.ChatClientRequestSpec prompt(Chat chat, String content, boolean onlyContext,
+                                                    int topK, double topP) {
+        return chatClient.prompt()
+                .system(onlyContext ? ONLY_CONTEXT_PROMPT : CONTEXT_FIRST_PROMPT)
                 .user(content)
-                .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, String.valueOf(chatId)))
+                .advisors(a -> a
+                        .param(ChatMemory.CONVERSATION_ID, String.valueOf(chat.getId()))
+                        .param(RagAdvisor.USER_ID, chat.getIdOwner()))
                 .options(OllamaOptions.builder()
                         .topK(topK)
                         .topP(topP)
-                        .build())
-                .call()
-                .content();
+                        .build());
+    }
+
+    // Retrieval runs with the owner's id, so only the owner may ask, read or cancel
+    private Chat findOwnedChat(Long chatId) {
+        Chat chat = chatRepository.findById(chatId)
+                .orElseThrow(() -> new NotFoundException(ApiErrorMessage.CHAT_NOT_FOUND_BY_ID.getMessage(chatId)));
+        accessValidator.validateOwnerAccess(chat.getIdOwner().intValue());
+        return chat;
+    }
 
-        ChatEntry assistantEntry = ChatEntry.builder()
+    private ChatEntry saveEntry(Chat chat, Role role, String content) {
+        ChatEntry entry = ChatEntry.builder()
                 .chat(chat)
-                .content(response)
-                .role(Role.ASSISTANT)
+                .content(content)
+                .role(role)
                 .build();
-
-        return chatEntryRepository.save(assistantEntry);
+        return chatEntryRepository.save(entry);
     }
-}
\ No newline at end of file
+}
@@ -1,17 +1,15 @@
 package com.balex.rag.service.impl;
 
+import com.balex.rag.model.constants.ApiErrorMessage;
+import com.balex.rag.model.dto.ChatSummaryDTO;
 import com.balex.rag.model.entity.Chat;
+import com.balex.rag.model.exception.NotFoundException;
 import com.balex.rag.repo.ChatRepository;
 import com.balex.rag.service.ChatService;
 import com.balex.rag.utils.ApiUtils;
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
-import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.model.ChatResponse;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -21,12 +19,12 @@ public class ChatServiceImpl implements ChatService {
 
     private final ChatRepository chatRepo;
 
-    private final ChatClient chatClient;
-
     private final ApiUtils apiUtils;
 
-    public List<Chat> getAllChats() {
-        return chatRepo.findAll(Sort.by(Sort.Direction.DESC, "createdAt"));
+    private final ChatMemory chatMemory;
+
+    public List<ChatSummaryDTO> getAllChats() {
+        return chatRepo.findAllSummaries();
     }
 
     public Chat createNewChat(String title) {
@@ -40,37 +38,13 @@ public class ChatServiceImpl implements ChatService {
     }
 
     public Chat getChat(Long chatId) {
-        return chatRepo.findById(chatId).orElseThrow();
+        return chatRepo.findWithHistoryById(chatId)
+                .orElseThrow(() -> new NotFoundException(ApiErrorMessage.CHAT_NOT_FOUND_BY_ID.getMessage(chatId)));
     }
 
     public void deleteChat(Long chatId) {
         chatRepo.deleteById(chatId);
-    }
-
-
-    public SseEmitter proceedInteractionWithStreaming(Long chatId, String userPrompt) {
-
-        SseEmitter sseEmitter = new SseEmitter(0L);
-        final StringBuilder answer = new StringBuilder();
-
-        chatClient
-                .prompt(userPrompt)
-                .advisors(advisorSpec -> advisorSpec.param(ChatMemory.CONVERSATION_ID, chatId))
-                .stream()
-                .chatResponse()
-                .subscribe(
-                        (ChatResponse response) -> processToken(response, sseEmitter, answer),
-                        sseEmitter::completeWithError,
-                        sseEmitter::complete);
-        return sseEmitter;
-    }
-
-
-    @SneakyThrows
-    private static void processToken(ChatResponse response, SseEmitter emitter, StringBuilder answer) {
-        var token = response.getResult().getOutput();
-        emitter.send(token);
-        answer.append(token.getText());
+        chatMemory.clear(String.valueOf(chatId));
     }
 
 }
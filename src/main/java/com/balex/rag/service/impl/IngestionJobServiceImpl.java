@@ -0,0 +1,481 @@
+package com.balex.rag.service.impl;
+
+import com.balex.rag.config.RagIngestionProperties;
+import com.balex.rag.model.IngestionJob;
+import com.balex.rag.model.IngestionJobFile;
+import com.balex.rag.model.UploadProgress;
+import com.balex.rag.model.constants.ApiLogMessage;
+import com.balex.rag.model.enums.IngestionFileStatus;
+import com.balex.rag.model.enums.IngestionJobStatus;
+import com.balex.rag.model.enums.UserTaskKind;
+import com.balex.rag.model.exception.NotFoundException;
+import com.balex.rag.model.exception.UploadException;
+import com.balex.rag.repo.IngestionJobRepository;
+import com.balex.rag.service.IngestionJobService;
+import com.balex.rag.service.concurrent.UserTaskExecutor;
+import com.balex.rag.service.ingest.ChunkWriter;
+import com.balex.rag.service.ingest.IngestionListener;
+import com.balex.rag.service.ingest.IngestionPipeline;
+import com.balex.rag.service.concurrent.LatestValuePublisher;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.balex.rag.model.constants.ApiConstants.EMPTY_FILENAME;
+import static com.balex.rag.model.constants.ApiErrorMessage.INGESTION_JOB_NOT_FOUND_BY_ID;
+import static com.balex.rag.model.constants.ApiErrorMessage.UPLOADED_FILENAME_EMPTY;
+import static com.balex.rag.model.constants.ApiErrorMessage.UPLOAD_FILE_SPOOL_ERROR;
+import static com.balex.rag.model.UploadProgress.STATUS_COMPLETED;
+import static com.balex.rag.model.UploadProgress.STATUS_FAILED;
+import static com.balex.rag.model.UploadProgress.STATUS_PROCESSING;
+import static com.balex.rag.model.UploadProgress.STATUS_QUEUED;
+
+/**
+ * Runs uploads as persisted jobs that outlive the request and the process.
+ *
+ * Uploads are spooled to disk and recorded in ingestion_job / ingestion_job_file before
+ * ingestion starts. Files are marked finished together with their documents and every
+ * written chunk window advances a per-file checkpoint, so jobs interrupted by a shutdown
+ * or crash are picked up on the next start and continue after their last checkpoint.
+ * Resuming assumes a single application instance owns the job table.
+ *
+ * Finished jobs are purged after {@code jobRetention}. On shutdown running jobs stop after
+ * their current step and are awaited up to {@code shutdownTimeout}; their subscribers get a
+ * final "queued" snapshot, so clients know to attach again once the next instance is up.
+ *
+ * Progress is kept in memory per running job. Pipeline workers only bump counters; a
+ * single publisher samples running jobs at a fixed rate and fans changed snapshots out
+ * through {@link LatestValuePublisher}, so clients attach and detach at any time and a
+ * slow client never slows the job down.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestionJobServiceImpl implements IngestionJobService {
+
+    private final IngestionJobRepository jobRepository;
+    private final IngestionPipeline ingestionPipeline;
+    private final ChunkWriter chunkWriter;
+    private final UserTaskExecutor userTaskExecutor;
+    private final RagIngestionProperties properties;
+
+    private final Map<Long, JobProgress> running = new ConcurrentHashMap<>();
+    private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
+    // Publishes progress and purges old jobs
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofVirtual().name("ingestion-scheduler").factory());
+    private final Instant startedAt = Instant.now();
+
+    @Override
+    public IngestionJob submit(List<MultipartFile> files, Long userId) {
+        List<SpoolSource> sources = files.stream()
+                .filter(f -> !f.isEmpty())
+                .map(file -> new SpoolSource(filename(file), file::transferTo))
+                .toList();
+        return submitSources(sources, userId);
+    }
+
+    @Override
+    public IngestionJob submitLocal(Map<String, Path> files, Long userId) {
+        List<SpoolSource> sources = files.entrySet().stream()
+                .map(file -> new SpoolSource(file.getKey(), target -> Files.copy(file.getValue(), target)))
+                .toList();
+        return submitSources(sources, userId);
+    }
+
+    @Override
+    public void removeLocal(Collection<String> filenames, Long userId) {
+        if (!filenames.isEmpty()) {
+            chunkWriter.remove(userId, filenames);
+        }
+    }
+
+    @Override
+    public Set<String> findUnfinishedFilenames(Long userId) {
+        return new HashSet<>(jobRepository.findUnfinishedFilenames(userId));
+    }
+
+    // The job row is only written once every file is spooled, together with its files
+    private IngestionJob submitSources(List<SpoolSource> sources, Long userId) {
+        long jobId = jobRepository.nextJobId();
+        Path jobDir = spoolDir(jobId);
+
+        List<IngestionJobFile> jobFiles = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            SpoolSource source = sources.get(i);
+            Path target = jobDir.resolve(String.valueOf(i));
+            try {
+                Files.createDirectories(jobDir);
+                source.writer().writeTo(target);
+            } catch (IOException e) {
+                deleteSpool(jobId);
+                throw new UploadException(UPLOAD_FILE_SPOOL_ERROR.getMessage() + source.filename(), e);
+            }
+
+            jobFiles.add(IngestionJobFile.builder()
+                    .jobId(jobId)
+                    .fileIndex(i)
+                    .filename(source.filename())
+                    .spoolPath(target.toAbsolutePath().toString())
+                    .ingestionId(UUID.randomUUID().toString())
+                    .status(IngestionFileStatus.PENDING)
+                    .build());
+        }
+
+        IngestionJob job;
+        try {
+            job = jobRepository.createJob(jobId, userId, jobFiles);
+        } catch (RuntimeException e) {
+            deleteSpool(jobId);
+            throw e;
+        }
+
+        try {
+            start(job);
+        } catch (RejectedExecutionException e) {
+            jobRepository.updateStatus(jobId, IngestionJobStatus.FAILED, e.getMessage());
+            deleteSpool(jobId);
+            throw e;
+        }
+        return job;
+    }
+
+    @Override
+    public Runnable subscribe(Long jobId, Long userId, Consumer<UploadProgress> subscriber) {
+        JobProgress progress = running.get(jobId);
+        if (progress != null) {
+            if (!progress.userId.equals(userId)) {
+                throw new NotFoundException(INGESTION_JOB_NOT_FOUND_BY_ID.getMessage(jobId));
+            }
+            return progress.publisher.subscribe(subscriber);
+        }
+
+        // Finished, or not resumed yet right after a restart: the stored state is all there is,
+        // so it is sent once and the subscription ends; a waiting job can be attached to again
+        IngestionJob job = jobRepository.findJob(jobId)
+                .filter(found -> found.getUserId().equals(userId))
+                .orElseThrow(() -> new NotFoundException(INGESTION_JOB_NOT_FOUND_BY_ID.getMessage(jobId)));
+        int percent = job.getTotalFiles() > 0
+                ? (int) Math.round((double) job.getProcessedFiles() / job.getTotalFiles() * 100)
+                : 100;
+        UploadProgress snapshot = UploadProgress.builder()
+                .jobId(job.getId())
+                .percent(percent)
+                .processedFiles(job.getProcessedFiles())
+                .totalFiles(job.getTotalFiles())
+                .currentFile("")
+                .status(switch (job.getStatus()) {
+                    case COMPLETED -> STATUS_COMPLETED;
+                    case FAILED -> STATUS_FAILED;
+                    case QUEUED, RUNNING -> STATUS_QUEUED;
+                })
+                .build();
+        try {
+            subscriber.accept(snapshot);
+        } catch (RuntimeException e) {
+            log.debug("Progress subscriber of ingestion job {} failed: {}", jobId, e.getMessage());
+        }
+        return () -> {
+        };
+    }
+
+    @PostConstruct
+    public void startScheduler() {
+        long intervalMillis = Math.max(1, properties.progressInterval().toMillis());
+        scheduler.scheduleAtFixedRate(() -> running.values().forEach(JobProgress::publishIfChanged),
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::purgeFinishedJobs, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        List<IngestionJob> unfinished = jobRepository.findByStatusIn(
+                List.of(IngestionJobStatus.QUEUED, IngestionJobStatus.RUNNING));
+        deleteOrphanedSpools(unfinished.stream().map(IngestionJob::getId).collect(Collectors.toSet()));
+        for (IngestionJob job : unfinished) {
+            log.info("Resuming ingestion job {} at {}/{} files", job.getId(), job.getProcessedFiles(),
+                    job.getTotalFiles());
+            try {
+                start(job);
+            } catch (RejectedExecutionException e) {
+                log.warn("Ingestion job {} was rejected by the task executor, it stays queued for the next start",
+                        job.getId());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stopRunningJobs() {
+        // Running jobs stop after their current step and stay resumable
+        shuttingDown.set(true);
+        scheduler.shutdownNow();
+
+        long deadline = System.nanoTime() + properties.shutdownTimeout().toNanos();
+        for (JobProgress progress : List.copyOf(running.values())) {
+            try {
+                if (!progress.stopped.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    log.warn("Ingestion job {} did not stop within {}", progress.jobId, properties.shutdownTimeout());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void purgeFinishedJobs() {
+        try {
+            int purged = jobRepository.deleteFinishedBefore(Instant.now().minus(properties.jobRetention()));
+            if (purged > 0) {
+                log.info("Purged {} finished ingestion jobs", purged);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Purging finished ingestion jobs failed: {}", e.getMessage());
+        }
+    }
+
+    // Spools of uploads whose job row was never written, e.g. after a crash while spooling
+    private void deleteOrphanedSpools(Set<Long> unfinishedJobIds) {
+        if (!Files.isDirectory(properties.spoolDir())) {
+            return;
+        }
+        try (Stream<Path> dirs = Files.list(properties.spoolDir())) {
+            dirs.filter(dir -> isOrphanedSpool(dir, unfinishedJobIds)).forEach(dir -> {
+                log.info("Deleting orphaned ingestion spool {}", dir);
+                try {
+                    FileSystemUtils.deleteRecursively(dir);
+                } catch (IOException e) {
+                    log.warn("Could not delete orphaned ingestion spool {}: {}", dir, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Could not list ingestion spools: {}", e.getMessage());
+        }
+    }
+
+    // Spools written since startup may belong to an upload that is being submitted right now
+    private boolean isOrphanedSpool(Path dir, Set<Long> unfinishedJobIds) {
+        try {
+            long jobId = Long.parseLong(dir.getFileName().toString());
+            return !unfinishedJobIds.contains(jobId)
+                    && Files.getLastModifiedTime(dir).toInstant().isBefore(startedAt);
+        } catch (NumberFormatException | IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @throws RejectedExecutionException when the task executor is full; the job is then no
+     *                                    longer tracked and its subscribers are told it is queued
+     */
+    private void start(IngestionJob job) {
+        JobProgress progress = new JobProgress(job);
+        running.put(job.getId(), progress);
+        try {
+            userTaskExecutor.execute(UserTaskKind.INGESTION, job.getUserId(), () -> runJob(job, progress),
+                    e -> {
+                        // Waited for a slot and then found the executor full; resumed on the next start
+                        log.warn("Queued ingestion job {} was rejected by the task executor, it stays queued "
+                                + "for the next start", job.getId());
+                        untrack(job, progress);
+                    });
+        } catch (RejectedExecutionException e) {
+            untrack(job, progress);
+            throw e;
+        }
+    }
+
+    private void untrack(IngestionJob job, JobProgress progress) {
+        running.remove(job.getId(), progress);
+        progress.finish(STATUS_QUEUED);
+        progress.stopped.countDown();
+    }
+
+    private void runJob(IngestionJob job, JobProgress progress) {
+        Long jobId = job.getId();
+        try {
+            // Waited for a slot until shutdown; stays queued for the next start
+            if (shuttingDown.get()) {
+                progress.finish(STATUS_QUEUED);
+                return;
+            }
+            jobRepository.updateStatus(jobId, IngestionJobStatus.RUNNING, null);
+            List<IngestionJobFile> files = jobRepository.findPendingFiles(jobId);
+
+            ingestionPipeline.run(files, job.getUserId(), progress, shuttingDown::get);
+
+            if (shuttingDown.get()) {
+                log.info("Ingestion job {} interrupted by shutdown, will resume on next start", jobId);
+                progress.finish(STATUS_QUEUED);
+                return;
+            }
+            jobRepository.updateStatus(jobId, IngestionJobStatus.COMPLETED, null);
+            progress.finish(STATUS_COMPLETED);
+            deleteSpool(jobId);
+
+        } catch (RuntimeException e) {
+            if (shuttingDown.get()) {
+                log.info("Ingestion job {} stopped by shutdown: {}", jobId, e.getMessage());
+                progress.finish(STATUS_QUEUED);
+                return;
+            }
+            log.error("Ingestion job {} failed", jobId, e);
+            jobRepository.updateStatus(jobId, IngestionJobStatus.FAILED, e.getMessage());
+            progress.finish(STATUS_FAILED);
+            deleteSpool(jobId);
+        } finally {
+            running.remove(jobId);
+            progress.stopped.countDown();
+        }
+    }
+
+    private Path spoolDir(Long jobId) {
+        return properties.spoolDir().resolve(String.valueOf(jobId));
+    }
+
+    private void deleteSpool(Long jobId) {
+        try {
+            FileSystemUtils.deleteRecursively(spoolDir(jobId));
+        } catch (IOException e) {
+            log.warn("Could not delete spooled files of ingestion job {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    private String filename(MultipartFile file) {
+        String filename = file.getOriginalFilename();
+        if (filename == null || filename.isBlank()) {
+            log.trace(ApiLogMessage.NAME_OF_CURRENT_METHOD.getValue(), UPLOADED_FILENAME_EMPTY);
+            return EMPTY_FILENAME;
+        }
+        return filename;
+    }
+
+    private record SpoolSource(String filename, SpoolWriter writer) {
+    }
+
+    @FunctionalInterface
+    private interface SpoolWriter {
+        void writeTo(Path target) throws IOException;
+    }
+
+    /**
+     * In-memory progress of a running job. Workers of any stage update it through the
+     * listener callbacks without locking; snapshots are taken by the progress publisher.
+     */
+    private static final class JobProgress implements IngestionListener {
+
+        private final Long jobId;
+        private final Long userId;
+        private final int totalFiles;
+        private final AtomicInteger processedFiles;
+        private final AtomicInteger skippedFiles = new AtomicInteger();
+        private final LongAdder queuedChunks = new LongAdder();
+        private final LongAdder writtenChunks = new LongAdder();
+        private volatile String currentFile = "";
+        private volatile String status = STATUS_PROCESSING;
+
+        private final AtomicLong version = new AtomicLong();
+        // Released once the job thread is done, however it ended
+        private final CountDownLatch stopped = new CountDownLatch(1);
+        private final LatestValuePublisher<UploadProgress> publisher;
+        private long publishedVersion = -1;
+
+        private JobProgress(IngestionJob job) {
+            this.jobId = job.getId();
+            this.userId = job.getUserId();
+            this.totalFiles = job.getTotalFiles();
+            this.processedFiles = new AtomicInteger(job.getProcessedFiles());
+            this.publisher = new LatestValuePublisher<>("ingestion-job-" + jobId);
+            publishIfChanged();
+        }
+
+        @Override
+        public void fileStarted(String filename) {
+            currentFile = filename;
+            version.incrementAndGet();
+        }
+
+        @Override
+        public void fileFinished(String filename, boolean stored) {
+            processedFiles.incrementAndGet();
+            if (!stored) {
+                skippedFiles.incrementAndGet();
+            }
+            version.incrementAndGet();
+        }
+
+        @Override
+        public void chunksQueued(int count) {
+            queuedChunks.add(count);
+            version.incrementAndGet();
+        }
+
+        @Override
+        public void chunksWritten(int count) {
+            writtenChunks.add(count);
+            version.incrementAndGet();
+        }
+
+        private void finish(String finalStatus) {
+            currentFile = "";
+            status = finalStatus;
+            version.incrementAndGet();
+            // Terminal state goes out right away instead of waiting for the next tick
+            publishIfChanged();
+        }
+
+        // Called by the publisher tick and once by the finishing job thread
+        private synchronized void publishIfChanged() {
+            long current = version.get();
+            if (current == publishedVersion) {
+                return;
+            }
+            publishedVersion = current;
+
+            int processed = processedFiles.get();
+            int percent = totalFiles > 0 ? (int) Math.round((double) processed / totalFiles * 100) : 100;
+            publisher.publish(UploadProgress.builder()
+                    .jobId(jobId)
+                    .percent(percent)
+                    .processedFiles(processed)
+                    .skippedFiles(skippedFiles.get())
+                    .totalFiles(totalFiles)
+                    .processedChunks(writtenChunks.sum())
+                    .queuedChunks(queuedChunks.sum())
+                    .currentFile(currentFile)
+                    .status(status)
+                    .build());
+        }
+    }
+}
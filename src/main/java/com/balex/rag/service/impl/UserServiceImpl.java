@@ -1,5 +1,6 @@
 package com.balex.rag.service.impl;
 
+import com.balex.rag.cache.RetrievalCache;
 import com.balex.rag.mapper.UserMapper;
 import com.balex.rag.model.LoadedDocument;
 import com.balex.rag.model.constants.ApiErrorMessage;
@@ -48,6 +49,7 @@ public class UserServiceImpl implements UserService {
     private final JwtTokenProvider jwtTokenProvider;
     private final DocumentRepository documentRepository;
     private final VectorStoreRepository vectorStoreRepository;
+    private final RetrievalCache retrievalCache;
 
     @Override
     @Transactional(readOnly = true)
@@ -179,6 +181,7 @@ public class UserServiceImpl implements UserService {
 
         // Удаляем чанки по user_id
         vectorStoreRepository.deleteByUserId(user.getId().longValue());
+        retrievalCache.invalidateUser(user.getId().longValue());
 
         // Удаляем записи из loaded_document
         documentRepository.deleteAll(documents);
@@ -0,0 +1,143 @@
+package com.balex.rag.service.impl;
+
+import com.balex.rag.config.RagVectorIndexProperties;
+import com.balex.rag.model.IndexBuildProgress;
+import com.balex.rag.model.enums.VectorIndexType;
+import com.balex.rag.repo.VectorIndexRepository;
+import com.balex.rag.service.VectorIndexService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the ANN index on vector_store in line with {@link RagVectorIndexProperties}.
+ *
+ * A rebuild creates the new index concurrently under a temporary name, then swaps the names
+ * in one short transaction and only drops the old index afterwards, so searches keep using
+ * the old index until the new one is ready and are never left without one.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VectorIndexServiceImpl implements VectorIndexService {
+
+    private static final String NEW_INDEX_SUFFIX = "_new";
+    private static final String RETIRED_INDEX_SUFFIX = "_old";
+
+    private final VectorIndexRepository vectorIndexRepository;
+    private final RagVectorIndexProperties properties;
+
+    private final AtomicBoolean building = new AtomicBoolean(false);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexOnStartup() {
+        if (properties.manageOnStartup()) {
+            Thread.ofVirtual().name("vector-index-check").start(this::ensureIndex);
+        }
+    }
+
+    @Override
+    public void ensureIndex() {
+        VectorIndexType type = properties.type();
+        List<String> expectedOptions = indexOptions(type);
+
+        boolean upToDate = vectorIndexRepository.findIndexOptions(type.getIndexName(), type.getAccessMethod())
+                .map(options -> new HashSet<>(options).equals(new HashSet<>(expectedOptions)))
+                .orElse(false);
+
+        if (upToDate) {
+            log.info("Vector index {} is up to date with options {}", type.getIndexName(), expectedOptions);
+            return;
+        }
+
+        rebuildIndex();
+    }
+
+    @Override
+    public boolean rebuildIndex() {
+        if (!building.compareAndSet(false, true)) {
+            log.info("Vector index build already in progress");
+            return false;
+        }
+
+        Thread.ofVirtual().name("vector-index-build").start(() -> {
+            try {
+                buildIndex(properties.type());
+            } catch (Exception e) {
+                log.error("Vector index build failed", e);
+            } finally {
+                building.set(false);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public Optional<IndexBuildProgress> getBuildProgress() {
+        return vectorIndexRepository.findBuildProgress();
+    }
+
+    private void buildIndex(VectorIndexType type) throws InterruptedException, ExecutionException {
+        String indexName = type.getIndexName();
+        String newIndexName = indexName + NEW_INDEX_SUFFIX;
+        String retiredIndexName = indexName + RETIRED_INDEX_SUFFIX;
+        List<String> options = indexOptions(type);
+
+        log.info("Building vector index {} using {} with options {}", indexName, type.getAccessMethod(), options);
+
+        // Leftovers from an interrupted build would be INVALID or block the names
+        vectorIndexRepository.dropIndexConcurrently(newIndexName);
+        vectorIndexRepository.dropIndexConcurrently(retiredIndexName);
+
+        CompletableFuture<Void> build = CompletableFuture.runAsync(
+                () -> vectorIndexRepository.createIndexConcurrently(newIndexName, type.getAccessMethod(), options),
+                command -> Thread.ofVirtual().name("vector-index-ddl").start(command));
+
+        awaitWithProgress(build);
+
+        vectorIndexRepository.swapIndex(indexName, newIndexName, retiredIndexName);
+        vectorIndexRepository.dropIndexConcurrently(retiredIndexName);
+
+        // Switching index type leaves the other one behind
+        Arrays.stream(VectorIndexType.values())
+                .filter(other -> other != type)
+                .forEach(other -> vectorIndexRepository.dropIndexConcurrently(other.getIndexName()));
+
+        log.info("Vector index {} is ready", indexName);
+    }
+
+    private void awaitWithProgress(CompletableFuture<Void> build) throws InterruptedException, ExecutionException {
+        long intervalMillis = properties.progressLogInterval().toMillis();
+        while (true) {
+            try {
+                build.get(intervalMillis, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                vectorIndexRepository.findBuildProgress().ifPresent(progress ->
+                        log.info("Vector index build: {} {}% ({}/{} blocks, {}/{} tuples)",
+                                progress.getPhase(), progress.getPercent(),
+                                progress.getBlocksDone(), progress.getBlocksTotal(),
+                                progress.getTuplesDone(), progress.getTuplesTotal()));
+            }
+        }
+    }
+
+    private List<String> indexOptions(VectorIndexType type) {
+        return switch (type) {
+            case HNSW -> List.of("m=" + properties.m(), "ef_construction=" + properties.efConstruction());
+            case IVFFLAT -> List.of("lists=" + properties.lists());
+        };
+    }
+}
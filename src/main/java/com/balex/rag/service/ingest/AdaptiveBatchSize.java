@@ -0,0 +1,49 @@
+package com.balex.rag.service.ingest;
+
+import java.time.Duration;
+
+/**
+ * Additive-increase / multiplicative-decrease controller for the embedding batch size.
+ *
+ * Full batches answered within the target latency grow the size by a fixed step; slow
+ * or failed batches halve it. Shared by all embed workers, so they converge on what the
+ * embedding server currently sustains.
+ */
+final class AdaptiveBatchSize {
+
+    private final int min;
+    private final int max;
+    private final int step;
+    private final long targetNanos;
+
+    private int current;
+
+    AdaptiveBatchSize(int initial, int min, int max, Duration targetLatency) {
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.step = this.min;
+        this.targetNanos = targetLatency.toNanos();
+        this.current = clamp(initial);
+    }
+
+    synchronized int current() {
+        return current;
+    }
+
+    synchronized void onSuccess(int batchSize, long elapsedNanos) {
+        if (elapsedNanos > targetNanos) {
+            current = clamp(current / 2);
+        } else if (batchSize >= current) {
+            // Only full batches say anything about a larger size
+            current = clamp(current + step);
+        }
+    }
+
+    synchronized void onFailure() {
+        current = clamp(current / 2);
+    }
+
+    private int clamp(int size) {
+        return Math.min(max, Math.max(min, size));
+    }
+}
@@ -0,0 +1,129 @@
+package com.balex.rag.service.ingest;
+
+import com.balex.rag.config.RagIngestionProperties;
+import com.balex.rag.repo.VectorStoreRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embeds chunk batches for the ingestion pipeline.
+ *
+ * The batch size adapts to the observed embedding latency, and a failed request is retried
+ * on its own, so one Ollama hiccup costs a single batch instead of the whole file.
+ * Chunks whose text is already stored, by any user, reuse that embedding if the same model
+ * produced it; stored chunks record their model for that.
+ */
+@Slf4j
+@Component
+public class ChunkEmbedder {
+
+    public static final String EMBEDDING_MODEL_FIELD_NAME = "embedding_model";
+
+    private final EmbeddingModel embeddingModel;
+    private final String modelName;
+    private final VectorStoreRepository vectorStoreRepository;
+    private final RagIngestionProperties properties;
+    private final AdaptiveBatchSize batchSize;
+    private final Counter reusedEmbeddings;
+    // Resolved on first use; may cost an embedding call
+    private volatile int dimensions;
+
+    public ChunkEmbedder(EmbeddingModel embeddingModel, VectorStoreRepository vectorStoreRepository,
+                         RagIngestionProperties properties, MeterRegistry meterRegistry,
+                         @Value("${spring.ai.ollama.embedding.options.model:${spring.ai.ollama.embedding.model:mxbai-embed-large}}")
+                         String modelName) {
+        this.embeddingModel = embeddingModel;
+        this.modelName = modelName;
+        this.vectorStoreRepository = vectorStoreRepository;
+        this.properties = properties;
+        this.batchSize = new AdaptiveBatchSize(properties.embedBatchInitial(), properties.embedBatchMin(),
+                properties.embedBatchMax(), properties.embedTargetLatency());
+
+        Gauge.builder("rag.ingestion.embed.batch.size", batchSize, AdaptiveBatchSize::current)
+                .description("Current number of chunks per embedding request")
+                .register(meterRegistry);
+        this.reusedEmbeddings = Counter.builder("rag.ingestion.embeddings.reused")
+                .description("Chunks stored with an existing embedding instead of a new embedding call")
+                .register(meterRegistry);
+    }
+
+    public int batchSize() {
+        return batchSize.current();
+    }
+
+    /**
+     * Records the model that embeds the chunks, so later lookups only reuse its vectors.
+     */
+    public void tagModel(List<Document> chunks) {
+        for (Document chunk : chunks) {
+            chunk.getMetadata().put(EMBEDDING_MODEL_FIELD_NAME, modelName);
+        }
+    }
+
+    /**
+     * Looks up embeddings this model already stored for the chunk hashes.
+     */
+    public Map<String, float[]> findStored(Collection<String> chunkHashes) {
+        if (chunkHashes.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, float[]> found = vectorStoreRepository.findEmbeddingsByChunkHash(
+                chunkHashes, modelName, dimensions());
+        reusedEmbeddings.increment(found.size());
+        return found;
+    }
+
+    /**
+     * Embeds one batch of chunk texts, retrying only this batch with exponential backoff.
+     */
+    public List<float[]> embedBatch(List<String> texts) {
+        long delayMillis = properties.embedRetryDelay().toMillis();
+
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                List<float[]> embeddings = embeddingModel.embed(texts);
+                batchSize.onSuccess(texts.size(), System.nanoTime() - start);
+                return embeddings;
+            } catch (RuntimeException e) {
+                batchSize.onFailure();
+                if (attempt >= properties.embedMaxAttempts()) {
+                    throw e;
+                }
+                log.warn("Embedding batch of {} chunks failed (attempt {}), retrying in {} ms: {}",
+                        texts.size(), attempt, delayMillis, e.getMessage());
+                sleep(delayMillis);
+                delayMillis *= 2;
+            }
+        }
+    }
+
+    private int dimensions() {
+        int known = dimensions;
+        if (known == 0) {
+            known = embeddingModel.dimensions();
+            dimensions = known;
+        }
+        return known;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry embedding", e);
+        }
+    }
+}
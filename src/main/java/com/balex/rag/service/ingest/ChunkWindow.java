@@ -0,0 +1,12 @@
+package com.balex.rag.service.ingest;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * Consecutive chunks of one file, the unit that moves between pipeline stages.
+ * {@code index} numbers the windows of a file in production order.
+ */
+public record ChunkWindow(FileIngestion file, int index, List<Document> chunks) {
+}
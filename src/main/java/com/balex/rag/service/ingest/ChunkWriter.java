@@ -0,0 +1,126 @@
+package com.balex.rag.service.ingest;
+
+import com.balex.rag.advisors.rag.Bm25CorpusIndex;
+import com.balex.rag.cache.RetrievalCache;
+import com.balex.rag.model.LoadedDocument;
+import com.balex.rag.model.enums.IngestionFileStatus;
+import com.balex.rag.model.exception.UploadException;
+import com.balex.rag.repo.DocumentRepository;
+import com.balex.rag.repo.IngestionJobRepository;
+import com.balex.rag.repo.LoadedDocumentChunkRepository;
+import com.balex.rag.repo.VectorStoreRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+/**
+ * Last ingestion stage. Chunk windows are committed as they arrive but stay hidden from
+ * retrieval; the loaded_document row and its chunk manifest are only written once every
+ * window of the file is stored, and that transaction publishes the file's chunks. A file
+ * that does not get that far is removed again by its ingestion id.
+ *
+ * A re-upload replaces its previous version in the completing transaction: the previous
+ * row is locked, chunks that were not carried over are deleted and the row is dropped
+ * together with its manifest, so retrieval sees either the old version or the new one.
+ *
+ * The job file is marked finished in the same transaction that completes it, so after a
+ * crash a file is either fully stored and finished or still pending.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChunkWriter {
+
+    private final VectorStoreRepository vectorStoreRepository;
+    private final DocumentRepository documentRepository;
+    private final LoadedDocumentChunkRepository chunkRepository;
+    private final Bm25CorpusIndex corpusIndex;
+    private final RetrievalCache retrievalCache;
+    private final IngestionJobRepository jobRepository;
+
+    @Transactional
+    public void writeWindow(EmbeddedWindow embeddedWindow) {
+        ChunkWindow window = embeddedWindow.window();
+        vectorStoreRepository.insertChunks(window.chunks(), embeddedWindow.embeddings());
+    }
+
+    /**
+     * @return false when the same file content was stored by another upload meanwhile;
+     * the chunks of this upload are removed in that case
+     */
+    @Transactional
+    public boolean complete(FileIngestion file) {
+        if (documentRepository.existsByFilenameAndContentHash(file.getFilename(), file.getContentHash())) {
+            log.debug("Skipping duplicate file: {} with hash: {}", file.getFilename(), file.getContentHash());
+            vectorStoreRepository.deleteByIngestionId(file.getIngestionId());
+            jobRepository.finishFile(file.getJobFileId(), IngestionFileStatus.SKIPPED);
+            return false;
+        }
+
+        if (file.getPreviousDocumentId() != null) {
+            // A concurrent re-upload may have replaced the version this one was diffed against
+            documentRepository.findWithLockById(file.getPreviousDocumentId())
+                    .orElseThrow(() -> new UploadException(
+                            "Previous version of " + file.getFilename() + " was replaced concurrently"));
+            vectorStoreRepository.deleteByIds(file.removedChunkIds());
+            documentRepository.deleteById(file.getPreviousDocumentId());
+        }
+        // Pending chunks stay out of the corpus statistics just like they stay out of retrieval
+        corpusIndex.addChunks(vectorStoreRepository.publishIngestion(file.getIngestionId()));
+
+        LoadedDocument loaded = LoadedDocument.builder()
+                .documentType(file.getDocumentType())
+                .chunkCount(file.chunkCount())
+                .filename(file.getFilename())
+                .contentHash(file.getContentHash())
+                .userId(file.getUserId())
+                .build();
+
+        loaded = documentRepository.save(loaded);
+        chunkRepository.saveAll(loaded.getId(), file.manifest());
+        jobRepository.finishFile(file.getJobFileId(), IngestionFileStatus.STORED);
+        retrievalCache.invalidateUser(file.getUserId());
+
+        log.info("Successfully processed file: {} with {} chunks for user: {}",
+                file.getFilename(), file.chunkCount(), file.getUserId());
+        return true;
+    }
+
+    /**
+     * Records that every window of the file below {@code windowsDone} is committed.
+     */
+    public void checkpoint(FileIngestion file, int windowsDone) {
+        jobRepository.advanceCheckpoint(file.getJobFileId(), windowsDone);
+    }
+
+    /**
+     * Finishes a job file that was skipped before any of its chunks were written.
+     */
+    public void skip(Long jobFileId) {
+        jobRepository.finishFile(jobFileId, IngestionFileStatus.SKIPPED);
+    }
+
+    /**
+     * Removes stored documents of the user together with their chunks.
+     */
+    @Transactional
+    public void remove(Long userId, Collection<String> filenames) {
+        vectorStoreRepository.deleteByUserIdAndSourceIn(userId, filenames);
+        documentRepository.deleteByUserIdAndFilenameIn(userId, filenames);
+        retrievalCache.invalidateUser(userId);
+        log.info("Removed {} documents for user: {}", filenames.size(), userId);
+    }
+
+    /**
+     * Removes the already committed chunks of a file whose ingestion did not complete.
+     */
+    @Transactional
+    public void discard(FileIngestion file) {
+        vectorStoreRepository.deleteByIngestionId(file.getIngestionId());
+        retrievalCache.invalidateUser(file.getUserId());
+        log.info("Discarded partially ingested file: {} for user: {}", file.getFilename(), file.getUserId());
+    }
+}
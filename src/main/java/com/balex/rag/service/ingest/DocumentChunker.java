@@ -0,0 +1,218 @@
+package com.balex.rag.service.ingest;
+
+import com.balex.rag.advisors.rag.Bm25TermVector;
+import com.balex.rag.config.RagIngestionProperties;
+import com.balex.rag.model.ChunkManifestEntry;
+import com.balex.rag.model.IngestionJobFile;
+import com.balex.rag.model.LoadedDocument;
+import com.balex.rag.model.exception.UploadException;
+import com.balex.rag.repo.DocumentRepository;
+import com.balex.rag.repo.LoadedDocumentChunkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.TextReader;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static com.balex.rag.model.constants.ApiErrorMessage.UPLOAD_FILE_READ_ERROR;
+
+/**
+ * First ingestion stage: identifies an upload, skips known content and splits the text
+ * into chunk windows.
+ *
+ * The spooled upload is streamed twice instead of being loaded: once to hash it, once to
+ * decode and split it window by window, so memory stays bounded by the window size.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DocumentChunker {
+
+    public static final String CHUNK_HASH_FIELD_NAME = "chunk_hash";
+
+    private static final String TXT_EXTENSION = "txt";
+    private static final String USER_ID_FIELD_NAME = "user_id";
+    private static final int READ_BUFFER_CHARS = 8192;
+
+    private final DocumentRepository documentRepository;
+    private final LoadedDocumentChunkRepository chunkRepository;
+    private final RagIngestionProperties properties;
+
+    @Value("${app.document.chunk-size:200}")
+    private int chunkSize;
+
+    /**
+     * Hashes the upload without materializing it and, for a re-upload, loads the chunk
+     * manifest of the previous version to diff against.
+     *
+     * @return the file to ingest, or null when the same file content is already stored
+     */
+    public FileIngestion open(IngestionJobFile file, Long userId) {
+        String filename = file.getFilename();
+        String contentHash = computeSha256Hash(Path.of(file.getSpoolPath()), filename);
+
+        if (documentRepository.existsByFilenameAndContentHash(filename, contentHash)) {
+            log.debug("Skipping duplicate file: {} with hash: {}", filename, contentHash);
+            return null;
+        }
+
+        Long previousDocumentId = null;
+        List<ChunkManifestEntry> previousManifest = List.of();
+        if (properties.incremental()) {
+            LoadedDocument previous = documentRepository
+                    .findFirstByUserIdAndFilenameOrderByLoadedAtDesc(userId, filename)
+                    .orElse(null);
+            // Documents loaded before manifests were kept cannot be diffed and stay as they are
+            if (previous != null) {
+                previousManifest = chunkRepository.findByDocumentId(previous.getId());
+                previousDocumentId = previousManifest.isEmpty() ? null : previous.getId();
+            }
+        }
+
+        return new FileIngestion(file, contentHash, getExtensionOrTxt(filename), userId,
+                previousDocumentId, previousManifest);
+    }
+
+    /**
+     * Decodes the upload incrementally and hands over its chunks window by window. The last
+     * chunk of a window is carried into the next one, so window edges do not leave
+     * undersized chunks behind.
+     *
+     * Splitting is deterministic for the same content and settings, which is what lets a
+     * resumed ingestion skip the windows it already committed.
+     */
+    public void split(IngestionJobFile file, FileIngestion ingestion, WindowSink sink) throws InterruptedException {
+        TokenTextSplitter splitter = TokenTextSplitter.builder()
+                .withChunkSize(chunkSize)
+                .build();
+        int windowChars = Math.max(READ_BUFFER_CHARS, properties.windowChars());
+
+        char[] buffer = new char[READ_BUFFER_CHARS];
+        StringBuilder window = new StringBuilder(windowChars + READ_BUFFER_CHARS);
+
+        try (Reader reader = new InputStreamReader(
+                Files.newInputStream(Path.of(file.getSpoolPath())), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                window.append(buffer, 0, read);
+                if (window.length() < windowChars) {
+                    continue;
+                }
+
+                String text = window.toString();
+                List<Document> chunks = splitWindow(splitter, text, ingestion);
+                window.setLength(0);
+                if (chunks.size() > 1) {
+                    carryLastChunk(text, chunks, window);
+                    chunks = chunks.subList(0, chunks.size() - 1);
+                }
+                sink.accept(chunks);
+            }
+        } catch (IOException e) {
+            throw new UploadException(UPLOAD_FILE_READ_ERROR + ingestion.getFilename(), e);
+        }
+
+        if (!window.isEmpty()) {
+            List<Document> chunks = splitWindow(splitter, window.toString(), ingestion);
+            if (!chunks.isEmpty()) {
+                sink.accept(chunks);
+            }
+        }
+    }
+
+    /**
+     * Starts the next window with the raw text from where the last chunk begins. The splitter
+     * trims chunk text, so carrying the chunk itself would drop whitespace at the window edge
+     * and glue its last word to the first word of the next read.
+     */
+    private static void carryLastChunk(String text, List<Document> chunks, StringBuilder window) {
+        // Chunks are trimmed slices of the window in order, so each is found after the previous one
+        int from = 0;
+        int start = -1;
+        for (Document chunk : chunks) {
+            start = text.indexOf(chunk.getText(), from);
+            if (start < 0) {
+                break;
+            }
+            from = start + chunk.getText().length();
+        }
+
+        if (start >= 0) {
+            window.append(text, start, text.length());
+        } else {
+            window.append(chunks.getLast().getText()).append(' ');
+        }
+    }
+
+    public static String chunkHash(Document chunk) {
+        return chunk.getMetadata().get(CHUNK_HASH_FIELD_NAME) instanceof String chunkHash ? chunkHash : null;
+    }
+
+    private List<Document> splitWindow(TokenTextSplitter splitter, String text, FileIngestion ingestion) {
+        // Same source metadata TextReader would attach
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(TextReader.CHARSET_METADATA, StandardCharsets.UTF_8.name());
+        metadata.put(TextReader.SOURCE_METADATA, ingestion.getFilename());
+
+        List<Document> chunks = splitter.apply(List.of(new Document(text, metadata)));
+
+        for (Document chunk : chunks) {
+            chunk.getMetadata().put(USER_ID_FIELD_NAME, ingestion.getUserId());
+            chunk.getMetadata().put(FileIngestion.INGESTION_ID_FIELD_NAME, ingestion.getIngestionId());
+            // Content address of the chunk text; equal chunks reuse a stored embedding
+            chunk.getMetadata().put(CHUNK_HASH_FIELD_NAME,
+                    HexFormat.of().formatHex(newSha256().digest(chunk.getText().getBytes(StandardCharsets.UTF_8))));
+            Bm25TermVector.attachTo(chunk);
+        }
+        return chunks;
+    }
+
+    private String getExtensionOrTxt(String filename) {
+        int idx = filename.lastIndexOf('.');
+        if (idx == -1 || idx == filename.length() - 1) {
+            return TXT_EXTENSION;
+        }
+        return filename.substring(idx + 1).toLowerCase();
+    }
+
+    private String computeSha256Hash(Path file, String filename) {
+        MessageDigest digest = newSha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new UploadException(UPLOAD_FILE_READ_ERROR + filename, e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface WindowSink {
+        void accept(List<Document> chunks) throws InterruptedException;
+    }
+}
@@ -0,0 +1,9 @@
+package com.balex.rag.service.ingest;
+
+import java.util.List;
+
+/**
+ * Chunk window with one embedding per chunk, in chunk order.
+ */
+public record EmbeddedWindow(ChunkWindow window, List<float[]> embeddings) {
+}
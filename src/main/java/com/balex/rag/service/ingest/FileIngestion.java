@@ -0,0 +1,186 @@
+package com.balex.rag.service.ingest;
+
+import com.balex.rag.model.ChunkManifestEntry;
+import com.balex.rag.model.IngestionJobFile;
+import lombok.Getter;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayDeque;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One uploaded file on its way through the pipeline.
+ *
+ * The file is split into windows that are embedded and written independently. The
+ * producer holds one pending slot until it has emitted the last window, so the file is
+ * complete exactly when the pending count drops to zero, whichever thread does it.
+ *
+ * A re-upload of a file is diffed against the manifest of its previous version: chunks
+ * whose text is unchanged keep their stored row, only new chunks travel down the pipeline.
+ * The manifest is built by the producer thread and read once the file is complete.
+ *
+ * New chunks get ids derived from the ingestion id and their position, so a window that is
+ * written again after a restart overwrites its rows instead of duplicating them. Windows are
+ * numbered in production order and the contiguous prefix already committed is the
+ * checkpoint a resumed ingestion continues from.
+ */
+public final class FileIngestion {
+
+    public static final String INGESTION_ID_FIELD_NAME = "ingestion_id";
+
+    // ingestion_job_file row this ingestion belongs to
+    @Getter
+    private final Long jobFileId;
+    @Getter
+    private final String filename;
+    @Getter
+    private final String contentHash;
+    @Getter
+    private final String documentType;
+    @Getter
+    private final Long userId;
+    // Tags every chunk of this upload so a failed file can be removed without touching others
+    @Getter
+    private final String ingestionId;
+    // loaded_document row this upload replaces, null for a first upload
+    @Getter
+    private final Long previousDocumentId;
+
+    // Chunk ids of the previous version by chunk hash, minus the ones matched so far
+    private final Map<String, Deque<String>> previousChunks = new HashMap<>();
+    // Chunks of the previous version stored without a hash; they can never be matched
+    private final List<String> unmatchablePreviousChunks = new ArrayList<>();
+    private final List<ChunkManifestEntry> manifest = new ArrayList<>();
+
+    // Windows below this index were committed by an earlier attempt and are not produced again
+    @Getter
+    private final int resumeFrom;
+    private int producedWindows;
+    private final BitSet committedWindows = new BitSet();
+    private int checkpoint;
+
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicInteger writtenWindows = new AtomicInteger();
+
+    FileIngestion(IngestionJobFile jobFile, String contentHash, String documentType, Long userId,
+                  Long previousDocumentId, List<ChunkManifestEntry> previousManifest) {
+        this.jobFileId = jobFile.getId();
+        this.filename = jobFile.getFilename();
+        this.ingestionId = jobFile.getIngestionId();
+        this.resumeFrom = jobFile.getWindowsDone();
+        this.checkpoint = resumeFrom;
+        this.contentHash = contentHash;
+        this.documentType = documentType;
+        this.userId = userId;
+        this.previousDocumentId = previousDocumentId;
+        for (ChunkManifestEntry entry : previousManifest) {
+            if (entry.chunkHash() != null) {
+                previousChunks.computeIfAbsent(entry.chunkHash(), hash -> new ArrayDeque<>()).add(entry.chunkId());
+            } else {
+                unmatchablePreviousChunks.add(entry.chunkId());
+            }
+        }
+    }
+
+    /**
+     * Adds the window to the manifest and returns the chunks that still have to be stored.
+     * A chunk whose text occurs in the previous version takes over that stored row, any
+     * other chunk gets its positional id.
+     */
+    List<Document> retainChanged(List<Document> chunks) {
+        List<Document> changed = new ArrayList<>(chunks.size());
+        for (Document chunk : chunks) {
+            String chunkHash = DocumentChunker.chunkHash(chunk);
+            Deque<String> stored = chunkHash == null ? null : previousChunks.get(chunkHash);
+            String keptId = stored == null ? null : stored.poll();
+
+            if (keptId != null) {
+                manifest.add(new ChunkManifestEntry(manifest.size(), keptId, chunkHash));
+            } else {
+                Document identified = Document.builder()
+                        .id(chunkId(manifest.size()))
+                        .text(chunk.getText())
+                        .metadata(chunk.getMetadata())
+                        .build();
+                manifest.add(new ChunkManifestEntry(manifest.size(), identified.getId(), chunkHash));
+                changed.add(identified);
+            }
+        }
+        return changed;
+    }
+
+    public List<ChunkManifestEntry> manifest() {
+        return manifest;
+    }
+
+    /**
+     * Rows of the previous version whose text no longer occurs in the file, plus the ones
+     * stored without a hash, which were never carried over.
+     */
+    public List<String> removedChunkIds() {
+        List<String> removed = new ArrayList<>(unmatchablePreviousChunks);
+        previousChunks.values().forEach(removed::addAll);
+        return removed;
+    }
+
+    /**
+     * Numbers the next window that has chunks to store. Producer thread only.
+     */
+    int nextWindow() {
+        return producedWindows++;
+    }
+
+    void windowProduced() {
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Records a committed window.
+     *
+     * @return the new checkpoint, or -1 when the window did not extend the committed prefix
+     */
+    synchronized int windowCommitted(int index) {
+        committedWindows.set(index);
+        int next = committedWindows.nextClearBit(checkpoint);
+        if (next == checkpoint) {
+            return -1;
+        }
+        checkpoint = next;
+        return checkpoint;
+    }
+
+    /**
+     * @return true when this was the last outstanding part of the file
+     */
+    boolean windowWritten() {
+        writtenWindows.incrementAndGet();
+        return pending.decrementAndGet() == 0;
+    }
+
+    /**
+     * @return true when every window was already written
+     */
+    boolean producerDone() {
+        return pending.decrementAndGet() == 0;
+    }
+
+    public int chunkCount() {
+        return manifest.size();
+    }
+
+    boolean hasWrittenChunks() {
+        return resumeFrom > 0 || writtenWindows.get() > 0;
+    }
+
+    private String chunkId(int chunkIndex) {
+        return UUID.nameUUIDFromBytes((ingestionId + '/' + chunkIndex).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
@@ -0,0 +1,27 @@
+package com.balex.rag.service.ingest;
+
+/**
+ * Progress callbacks of an ingestion run. Called from the stage worker threads,
+ * possibly concurrently.
+ */
+public interface IngestionListener {
+
+    void fileStarted(String filename);
+
+    /**
+     * @param stored false when the file was skipped as a duplicate
+     */
+    void fileFinished(String filename, boolean stored);
+
+    /**
+     * Chunks of a window that were handed to the embed stage.
+     */
+    default void chunksQueued(int count) {
+    }
+
+    /**
+     * Chunks of a window that were committed.
+     */
+    default void chunksWritten(int count) {
+    }
+}
@@ -0,0 +1,454 @@
+package com.balex.rag.service.ingest;
+
+import com.balex.rag.config.RagIngestionProperties;
+import com.balex.rag.model.IngestionJobFile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Staged ingestion: prepare (hash, split) → embed → write.
+ *
+ * Stages are connected by bounded queues of chunk windows and each runs its own pool of
+ * virtual-thread workers, so Ollama embeds one window while Postgres stores the previous
+ * one and the next is being split; a file never has to fit in memory. Embed workers pool
+ * the chunks of consecutive windows into batches sized by {@link ChunkEmbedder}, flushing
+ * when a batch is full or its oldest chunk has waited {@code embedLinger}. A file is completed when its last window is written and
+ * discarded if the run fails before that.
+ *
+ * Every written window advances the checkpoint of its job file. A run that is cancelled
+ * (on shutdown) keeps what it committed: the next run re-splits such a file, rebuilds the
+ * manifest and only sends the windows past the checkpoint down the pipeline.
+ *
+ * An empty {@link Optional} marks the end of a queue. After a failure
+ * or cancellation workers keep draining their queues without doing work, so no stage
+ * ever blocks on a full queue.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IngestionPipeline {
+
+    private final DocumentChunker chunker;
+    private final ChunkEmbedder embedder;
+    private final ChunkWriter writer;
+    private final RagIngestionProperties properties;
+
+    /**
+     * Ingests the pending files of a job and blocks until all of them are processed, the run
+     * is cancelled or a stage fails; the first stage failure is rethrown.
+     */
+    public void run(List<IngestionJobFile> files, Long userId, IngestionListener listener, BooleanSupplier cancelled) {
+        Run run = new Run(cancelled);
+
+        int preparers = Math.max(1, properties.prepareParallelism());
+        int embedders = Math.max(1, properties.embedParallelism());
+        int writers = Math.max(1, properties.writeParallelism());
+        int capacity = Math.max(1, properties.queueCapacity());
+
+        BlockingQueue<Optional<IngestionJobFile>> uploads = new LinkedBlockingQueue<>();
+        BlockingQueue<Optional<ChunkWindow>> prepared = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Optional<EmbeddedWindow>> embedded = new ArrayBlockingQueue<>(capacity);
+
+        files.forEach(file -> uploads.add(Optional.of(file)));
+        for (int i = 0; i < preparers; i++) {
+            uploads.add(Optional.empty());
+        }
+
+        List<Thread> workers = new ArrayList<>();
+        workers.addAll(startStage("prepare", preparers, uploads, prepared, embedders, run, () -> (file, sink) -> {
+            listener.fileStarted(file.getFilename());
+
+            FileIngestion ingestion = chunker.open(file, userId);
+            // The same content twice in one upload is stored once
+            if (ingestion == null || !run.claim(ingestion)) {
+                writer.skip(file.getId());
+                listener.fileFinished(file.getFilename(), false);
+                return;
+            }
+
+            chunker.split(file, ingestion, chunks -> {
+                List<Document> changed = ingestion.retainChanged(chunks);
+                if (changed.isEmpty()) {
+                    return;
+                }
+                int index = ingestion.nextWindow();
+                // Committed before a restart; only the manifest had to be rebuilt
+                if (index < ingestion.getResumeFrom()) {
+                    return;
+                }
+                ingestion.windowProduced();
+                sink.put(new ChunkWindow(ingestion, index, changed));
+                listener.chunksQueued(changed.size());
+            });
+            if (ingestion.producerDone()) {
+                complete(ingestion, run, listener);
+            }
+        }));
+        workers.addAll(startStage("embed", embedders, prepared, embedded, writers, run, EmbedBatcher::new));
+        workers.addAll(startStage("write", writers, embedded, null, 0, run, () -> map(window -> {
+            writer.writeWindow(window);
+            ChunkWindow written = window.window();
+            listener.chunksWritten(written.chunks().size());
+            FileIngestion ingestion = written.file();
+            int checkpoint = ingestion.windowCommitted(written.index());
+            if (ingestion.windowWritten()) {
+                complete(ingestion, run, listener);
+            } else if (checkpoint > 0) {
+                // After the window commit: a crash in between only means the window is rewritten
+                writer.checkpoint(ingestion, checkpoint);
+            }
+            return null;
+        })));
+
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.fail(new IllegalStateException("Ingestion interrupted", e));
+        }
+
+        if (run.isFailed()) {
+            discardIncomplete(run);
+        }
+        run.throwIfFailed();
+    }
+
+    private void complete(FileIngestion ingestion, Run run, IngestionListener listener) {
+        boolean stored = writer.complete(ingestion);
+        run.completed(ingestion);
+        listener.fileFinished(ingestion.getFilename(), stored);
+    }
+
+    // Windows of failed files may already be committed; a failed job is not resumed
+    private void discardIncomplete(Run run) {
+        for (FileIngestion ingestion : run.incomplete()) {
+            if (!ingestion.hasWrittenChunks()) {
+                continue;
+            }
+            try {
+                writer.discard(ingestion);
+            } catch (RuntimeException e) {
+                log.error("Could not discard partially ingested file: {}", ingestion.getFilename(), e);
+                run.fail(e);
+            }
+        }
+    }
+
+    private <I, O> List<Thread> startStage(String name, int parallelism,
+                                           BlockingQueue<Optional<I>> input,
+                                           BlockingQueue<Optional<O>> output, int consumers,
+                                           Run run, Supplier<StageWork<I, O>> workFactory) {
+        AtomicInteger active = new AtomicInteger(parallelism);
+        List<Thread> threads = new ArrayList<>(parallelism);
+
+        for (int i = 0; i < parallelism; i++) {
+            StageWork<I, O> work = workFactory.get();
+            Sink<O> sink = result -> {
+                if (output != null) {
+                    output.put(Optional.of(result));
+                }
+            };
+
+            threads.add(Thread.ofVirtual().name("ingest-" + name + "-" + i).start(() -> {
+                try {
+                    while (true) {
+                        // A stopped run skips flushes, so its deadline would never move on
+                        long deadline = run.isStopped() ? StageWork.NO_DEADLINE : work.flushDeadline();
+                        Optional<I> item;
+                        if (deadline == StageWork.NO_DEADLINE) {
+                            item = input.take();
+                        } else {
+                            item = input.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                            if (item == null) {
+                                // Buffered work waited long enough for more input; hand it over
+                                runStep(name, run, () -> work.flush(sink));
+                                continue;
+                            }
+                        }
+                        if (item.isEmpty()) {
+                            runStep(name, run, () -> work.flush(sink));
+                            break;
+                        }
+                        I value = item.get();
+                        runStep(name, run, () -> work.process(value, sink));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    run.fail(new IllegalStateException("Ingestion interrupted", e));
+                } finally {
+                    // The last worker of a stage closes the next queue for every downstream worker
+                    if (active.decrementAndGet() == 0 && output != null) {
+                        for (int c = 0; c < consumers; c++) {
+                            putUninterruptibly(output, Optional.empty());
+                        }
+                    }
+                }
+            }));
+        }
+        return threads;
+    }
+
+    /**
+     * Skips the step once the run has stopped; items are still drained so upstream never blocks.
+     */
+    private static void runStep(String name, Run run, Step step) throws InterruptedException {
+        if (run.isStopped()) {
+            return;
+        }
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            log.error("Ingestion stage {} failed", name, e);
+            run.fail(e);
+        }
+    }
+
+    private static <I, O> StageWork<I, O> map(Function<I, O> function) {
+        return (item, sink) -> {
+            O result = function.apply(item);
+            if (result != null) {
+                sink.put(result);
+            }
+        };
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pools chunks of consecutive windows into embedding batches. Each worker owns its own
+     * batcher and a window is always handled by one worker, so no state here is shared.
+     * Stored embeddings are looked up once per batch, right before it is embedded.
+     */
+    private final class EmbedBatcher implements StageWork<ChunkWindow, EmbeddedWindow> {
+
+        private final List<WindowEmbeddings> windows = new ArrayList<>();
+        // One entry per distinct chunk text; equal chunks share the embedding call
+        private final List<String> pendingTexts = new ArrayList<>();
+        private final List<String> pendingHashes = new ArrayList<>();
+        private final List<List<Slot>> pendingSlots = new ArrayList<>();
+        private final Map<String, Integer> pendingByHash = new HashMap<>();
+        private long oldestPendingNanos;
+
+        @Override
+        public void process(ChunkWindow window, Sink<EmbeddedWindow> sink) throws InterruptedException {
+            WindowEmbeddings target = new WindowEmbeddings(window);
+            windows.add(target);
+
+            List<Document> chunks = window.chunks();
+            embedder.tagModel(chunks);
+            for (int i = 0; i < chunks.size(); i++) {
+                Slot slot = new Slot(target, i);
+                String chunkHash = DocumentChunker.chunkHash(chunks.get(i));
+                Integer known = chunkHash == null ? null : pendingByHash.get(chunkHash);
+                if (known != null) {
+                    pendingSlots.get(known).add(slot);
+                    continue;
+                }
+
+                if (chunkHash != null) {
+                    pendingByHash.put(chunkHash, pendingTexts.size());
+                }
+                if (pendingTexts.isEmpty()) {
+                    oldestPendingNanos = System.nanoTime();
+                }
+                pendingTexts.add(chunks.get(i).getText());
+                pendingHashes.add(chunkHash);
+                pendingSlots.add(new ArrayList<>(List.of(slot)));
+                if (pendingTexts.size() >= embedder.batchSize()) {
+                    embedPending();
+                }
+            }
+            emitCompleted(sink);
+        }
+
+        @Override
+        public long flushDeadline() {
+            return pendingTexts.isEmpty() ? NO_DEADLINE : oldestPendingNanos + properties.embedLinger().toNanos();
+        }
+
+        @Override
+        public void flush(Sink<EmbeddedWindow> sink) throws InterruptedException {
+            if (!pendingTexts.isEmpty()) {
+                embedPending();
+            }
+            emitCompleted(sink);
+        }
+
+        private void embedPending() {
+            Map<String, float[]> stored = embedder.findStored(pendingByHash.keySet());
+
+            List<String> texts = new ArrayList<>(pendingTexts.size());
+            List<List<Slot>> slots = new ArrayList<>(pendingTexts.size());
+            for (int i = 0; i < pendingTexts.size(); i++) {
+                String chunkHash = pendingHashes.get(i);
+                float[] embedding = chunkHash == null ? null : stored.get(chunkHash);
+                if (embedding != null) {
+                    fill(pendingSlots.get(i), embedding);
+                } else {
+                    texts.add(pendingTexts.get(i));
+                    slots.add(pendingSlots.get(i));
+                }
+            }
+
+            if (!texts.isEmpty()) {
+                List<float[]> embeddings = embedder.embedBatch(texts);
+                for (int i = 0; i < embeddings.size(); i++) {
+                    fill(slots.get(i), embeddings.get(i));
+                }
+            }
+            pendingTexts.clear();
+            pendingHashes.clear();
+            pendingSlots.clear();
+            pendingByHash.clear();
+        }
+
+        private static void fill(List<Slot> slots, float[] embedding) {
+            for (Slot slot : slots) {
+                slot.owner().set(slot.index(), embedding);
+            }
+        }
+
+        // Windows leave in arrival order once all their chunks are embedded
+        private void emitCompleted(Sink<EmbeddedWindow> sink) throws InterruptedException {
+            while (!windows.isEmpty() && windows.getFirst().remaining == 0) {
+                WindowEmbeddings done = windows.removeFirst();
+                sink.put(new EmbeddedWindow(done.window, Arrays.asList(done.embeddings)));
+            }
+        }
+    }
+
+    private static final class WindowEmbeddings {
+
+        private final ChunkWindow window;
+        private final float[][] embeddings;
+        private int remaining;
+
+        private WindowEmbeddings(ChunkWindow window) {
+            this.window = window;
+            this.embeddings = new float[window.chunks().size()][];
+            this.remaining = embeddings.length;
+        }
+
+        private void set(int index, float[] embedding) {
+            embeddings[index] = embedding;
+            remaining--;
+        }
+    }
+
+    private record Slot(WindowEmbeddings owner, int index) {
+    }
+
+    @FunctionalInterface
+    private interface StageWork<I, O> {
+
+        long NO_DEADLINE = Long.MAX_VALUE;
+
+        void process(I item, Sink<O> sink) throws InterruptedException;
+
+        /**
+         * {@link System#nanoTime()} by which buffered work is flushed if no more input
+         * arrives, or {@link #NO_DEADLINE} when nothing is buffered.
+         */
+        default long flushDeadline() {
+            return NO_DEADLINE;
+        }
+
+        /**
+         * Called when the flush deadline passes and once at the end of the input.
+         */
+        default void flush(Sink<O> sink) throws InterruptedException {
+        }
+    }
+
+    @FunctionalInterface
+    private interface Sink<O> {
+        void put(O item) throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws InterruptedException;
+    }
+
+    private static final class Run {
+
+        private final BooleanSupplier cancelled;
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+        private final Set<FileIngestion> incomplete = ConcurrentHashMap.newKeySet();
+
+        private Run(BooleanSupplier cancelled) {
+            this.cancelled = cancelled;
+        }
+
+        boolean isStopped() {
+            return isFailed() || cancelled.getAsBoolean();
+        }
+
+        boolean isFailed() {
+            return failure.get() != null;
+        }
+
+        boolean claim(FileIngestion ingestion) {
+            if (!claimed.add(ingestion.getFilename() + ':' + ingestion.getContentHash())) {
+                return false;
+            }
+            incomplete.add(ingestion);
+            return true;
+        }
+
+        void completed(FileIngestion ingestion) {
+            incomplete.remove(ingestion);
+        }
+
+        Set<FileIngestion> incomplete() {
+            return incomplete;
+        }
+
+        void fail(RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+
+        void throwIfFailed() {
+            RuntimeException e = failure.get();
+            if (e != null) {
+                throw e;
+            }
+        }
+    }
+}
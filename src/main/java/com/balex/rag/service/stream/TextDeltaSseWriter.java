@@ -0,0 +1,113 @@
+package com.balex.rag.service.stream;
+
+import com.balex.rag.config.RagChatStreamProperties;
+import com.balex.rag.model.enums.SlowClientPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Writes a stream of generated text to one SSE client as coalesced text deltas.
+ *
+ * Tokens are collected into a frame until it holds {@code maxFrameTokens} tokens or
+ * {@code frameInterval} has passed, and each frame is sent as one small {@link TextDelta}
+ * event. Frames wait for the client in a buffer of {@code maxPendingFrames}; when it is
+ * full the {@link SlowClientPolicy} decides whether frames are dropped or the generation is
+ * cancelled. Cancelling, a failed send or the client going away cancels the upstream, which
+ * aborts the model request.
+ */
+@Slf4j
+public final class TextDeltaSseWriter {
+
+    public static final String EVENT_DELTA = "delta";
+
+    private final SseEmitter emitter;
+    private final RagChatStreamProperties properties;
+    private final Sinks.Empty<Void> stop = Sinks.empty();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicInteger droppedFrames = new AtomicInteger();
+    private final StringBuilder text = new StringBuilder();
+
+    public TextDeltaSseWriter(SseEmitter emitter, RagChatStreamProperties properties) {
+        this.emitter = emitter;
+        this.properties = properties;
+        emitter.onCompletion(this::cancel);
+        emitter.onTimeout(this::cancel);
+        emitter.onError(e -> cancel());
+    }
+
+    /**
+     * Drains the tokens to the client on the calling thread until they complete or the
+     * writer is cancelled.
+     *
+     * @throws RuntimeException when the upstream fails
+     */
+    public void write(Flux<String> tokens) {
+        BufferOverflowStrategy overflow = properties.slowClientPolicy() == SlowClientPolicy.CANCEL
+                ? BufferOverflowStrategy.DROP_LATEST
+                : BufferOverflowStrategy.DROP_OLDEST;
+
+        // Closing the stream cancels the upstream if it is still running
+        try (Stream<String> frames = tokens
+                .takeUntilOther(stop.asMono())
+                .doOnNext(text::append)
+                .bufferTimeout(Math.max(1, properties.maxFrameTokens()), properties.frameInterval())
+                .map(parts -> String.join("", parts))
+                .onBackpressureBuffer(Math.max(1, properties.maxPendingFrames()), frame -> overflowed(), overflow)
+                .toStream(1)) {
+            frames.forEach(frame -> send(EVENT_DELTA, new TextDelta(frame)));
+        }
+
+        if (droppedFrames.get() > 0) {
+            log.debug("Dropped {} frames for a slow client", droppedFrames.get());
+        }
+    }
+
+    /**
+     * Sends one event unless the writer is cancelled; a failed send cancels it.
+     */
+    public void send(String name, Object data) {
+        if (cancelled.get()) {
+            return;
+        }
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            cancel();
+        }
+    }
+
+    public void cancel() {
+        if (cancelled.compareAndSet(false, true)) {
+            stop.tryEmitEmpty();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Text received so far, including frames dropped for a slow client.
+     */
+    public String text() {
+        return text.toString();
+    }
+
+    private void overflowed() {
+        droppedFrames.incrementAndGet();
+        if (properties.slowClientPolicy() == SlowClientPolicy.CANCEL) {
+            cancel();
+        }
+    }
+
+    public record TextDelta(String text) {
+    }
+}
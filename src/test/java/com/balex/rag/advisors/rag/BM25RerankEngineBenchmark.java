@@ -0,0 +1,88 @@
+package com.balex.rag.advisors.rag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocation of one rerank call over a fixed candidate set, the way RagAdvisor
+ * calls it: one shared engine, analyzers from the shared registry.
+ *
+ * Run from the IDE through {@link #main}, or with the JMH runner on the test classpath
+ * and {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BM25RerankEngineBenchmark {
+
+    private static final String QUERY = "how do I rebuild the vector index after a bulk upload";
+    private static final String[] WORDS = {
+            "vector", "index", "upload", "bulk", "rebuild", "postgres", "search", "chunk", "embedding",
+            "query", "answer", "document", "retrieval", "latency", "batch", "model", "stream", "memory",
+            "summary", "window", "token", "score", "rerank", "lexical", "fusion", "cache", "user",
+            "the", "a", "of", "and", "to", "is", "after", "before", "with", "for", "runs", "stores"
+    };
+
+    // Chunks stored before term vectors were persisted are tokenized again on every rerank
+    @Param({"true", "false"})
+    private boolean storedTerms;
+
+    @Param({"50"})
+    private int candidates;
+
+    private final BM25RerankEngine engine = BM25RerankEngine.builder().build();
+    private List<Document> corpus;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        corpus = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int word = 0; word < 200; word++) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            Map<String, Object> metadata = new HashMap<>();
+            if (storedTerms) {
+                Bm25TermVector.of(text.toString()).writeTo(metadata);
+            }
+            corpus.add(new Document("chunk-" + i, text.toString(), metadata));
+        }
+    }
+
+    @Benchmark
+    public List<Document> rerank() {
+        return engine.rerank(corpus, QUERY, 5);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BM25RerankEngineBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
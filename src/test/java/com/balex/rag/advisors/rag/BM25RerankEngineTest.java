@@ -0,0 +1,107 @@
+package com.balex.rag.advisors.rag;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BM25RerankEngineTest {
+
+    private final BM25RerankEngine engine = BM25RerankEngine.builder().build();
+
+    @Test
+    void ranksCandidatesMatchingTheQueryFirst() {
+        List<Document> candidates = List.of(
+                document("weather", "The weather was sunny and warm all week"),
+                document("index", "An HNSW index speeds up vector similarity search"),
+                document("recipe", "Mix the flour with eggs and bake the cake"));
+
+        List<Document> ranked = engine.rerank(candidates, "vector index search", 3);
+
+        assertThat(ranked).extracting(Document::getId).first().isEqualTo("index");
+        assertThat(ranked).hasSize(3);
+    }
+
+    @Test
+    void repeatedTermsScoreHigher() {
+        List<Document> candidates = List.of(
+                document("once", "postgres backup guide for beginners today"),
+                document("twice", "postgres backup and postgres restore guide"));
+
+        List<Document> ranked = engine.rerank(candidates, "postgres", 2);
+
+        assertThat(ranked).extracting(Document::getId).containsExactly("twice", "once");
+    }
+
+    @Test
+    void returnsAtMostLimitCandidates() {
+        List<Document> candidates = List.of(
+                document("a", "vector search"),
+                document("b", "vector index"),
+                document("c", "search index"));
+
+        assertThat(engine.rerank(candidates, "vector search index", 2)).hasSize(2);
+    }
+
+    @Test
+    void tiesKeepTheVectorSearchOrder() {
+        List<Document> candidates = List.of(
+                document("first", "cats sleep"),
+                document("second", "dogs sleep"),
+                document("third", "birds sleep"));
+
+        List<Document> ranked = engine.rerank(candidates, "unrelated question", 3);
+
+        assertThat(ranked).extracting(Document::getId).containsExactly("first", "second", "third");
+    }
+
+    @Test
+    void emptyInputYieldsEmptyResult() {
+        assertThat(engine.rerank(List.of(), "query", 5)).isEmpty();
+        assertThat(engine.rerank(null, "query", 5)).isEmpty();
+        assertThat(engine.rerank(List.of(document("a", "text")), "query", 0)).isEmpty();
+    }
+
+    @Test
+    void readsStoredTermVectorsInsteadOfTheText() {
+        Document stored = document("stored", "nothing relevant here");
+        Bm25TermVector.of("vector search vector search").writeTo(stored.getMetadata());
+        List<Document> candidates = List.of(document("plain", "vector"), stored);
+
+        List<Document> ranked = engine.rerank(candidates, "vector search", 2);
+
+        assertThat(ranked).extracting(Document::getId).containsExactly("stored", "plain");
+    }
+
+    @Test
+    void usesCorpusStatisticsOnceTheIndexIsReady() {
+        Document common = document("common", "index tuning");
+        Document rare = document("rare", "postgres tuning");
+        List<Document> candidates = List.of(common, rare);
+
+        // Among the candidates alone both query terms are equally rare
+        assertThat(engine.rerank(candidates, "postgres index", 2))
+                .extracting(Document::getId).containsExactly("common", "rare");
+
+        Bm25CorpusIndex corpusIndex = new Bm25CorpusIndex();
+        List<Document> corpus = new ArrayList<>(candidates);
+        for (int i = 0; i < 8; i++) {
+            corpus.add(document("filler-" + i, "index page " + i));
+        }
+        corpusIndex.addChunks(corpus);
+        corpusIndex.markReady();
+
+        BM25RerankEngine indexed = BM25RerankEngine.builder().corpusIndex(corpusIndex).build();
+
+        assertThat(indexed.rerank(candidates, "postgres index", 2))
+                .extracting(Document::getId).containsExactly("rare", "common");
+    }
+
+    private static Document document(String id, String text) {
+        return new Document(id, text, new HashMap<>());
+    }
+}
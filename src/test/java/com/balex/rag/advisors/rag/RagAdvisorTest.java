@@ -0,0 +1,183 @@
+package com.balex.rag.advisors.rag;
+
+import com.balex.rag.advisors.expansion.ExpansionQueryAdvisor;
+import com.balex.rag.cache.RetrievalCache;
+import com.balex.rag.config.RagExpansionProperties;
+import com.balex.rag.config.RagKnowledgeBaseProperties;
+import com.balex.rag.config.RagRetrievalCacheProperties;
+import com.balex.rag.repo.VectorStoreRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.balex.rag.advisors.expansion.ExpansionQueryAdvisor.ENRICHED_QUESTION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Speculative mode: the expansion advisor hands a pending expansion to retrieval, which
+ * searches the raw question first and waits for the expansion only for the grace period.
+ */
+class RagAdvisorTest {
+
+    private static final long USER_ID = 1L;
+    private static final String QUESTION = "vacuum tuning";
+    private static final String EXPANDED = "vacuum tuning autovacuum postgres";
+    private static final float[] QUESTION_EMBEDDING = {1f};
+    private static final float[] EXPANDED_EMBEDDING = {2f};
+
+    private final ChatModel chatModel = mock(ChatModel.class);
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+    private final VectorStoreRepository vectorStoreRepository = mock(VectorStoreRepository.class);
+    private final ExecutorService expansionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CountDownLatch releaseExpansion = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        when(embeddingModel.embed(QUESTION)).thenReturn(QUESTION_EMBEDDING);
+        when(embeddingModel.embed(EXPANDED)).thenReturn(EXPANDED_EMBEDDING);
+        when(vectorStoreRepository.searchSimilar(any(), anyLong(), anyInt(), anyDouble(), anyInt()))
+                .thenAnswer(call -> call.getArgument(0) == EXPANDED_EMBEDDING
+                        ? List.of(new Document("expanded-hit", "autovacuum postgres settings", Map.of()))
+                        : List.of(new Document("raw-hit", "vacuum tuning notes", Map.of())));
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseExpansion.countDown();
+        expansionExecutor.shutdownNow();
+    }
+
+    @Test
+    void expansionWithinTheGraceIsFusedInAndCached() {
+        expansionAnswers(EXPANDED, false);
+        Advisors advisors = advisors(Duration.ofSeconds(5));
+
+        ChatClientRequest request = advisors.ask();
+
+        assertThat(request.prompt().getUserMessage().getText())
+                .contains("vacuum tuning notes", "autovacuum postgres settings");
+        assertThat(request.context()).containsEntry(ENRICHED_QUESTION, EXPANDED);
+
+        // Cached under the raw question: the next ask neither searches nor expands
+        advisors.ask();
+        verify(vectorStoreRepository, times(2)).searchSimilar(any(), anyLong(), anyInt(), anyDouble(), anyInt());
+        verify(chatModel, times(1)).call(any(Prompt.class));
+    }
+
+    @Test
+    void lateExpansionIsDroppedAndTheRawResultIsNotCached() {
+        expansionAnswers(EXPANDED, true);
+        Advisors advisors = advisors(Duration.ofMillis(50));
+
+        ChatClientRequest request = advisors.ask();
+
+        assertThat(request.prompt().getUserMessage().getText())
+                .contains("vacuum tuning notes")
+                .doesNotContain("autovacuum postgres settings");
+        assertThat(request.context()).doesNotContainKey(ENRICHED_QUESTION);
+        verify(embeddingModel, never()).embed(EXPANDED);
+
+        advisors.ask();
+        verify(vectorStoreRepository, times(2)).searchSimilar(
+                any(), anyLong(), anyInt(), anyDouble(), anyInt());
+    }
+
+    @Test
+    void failedExpansionFallsBackToTheRawCandidates() {
+        when(chatModel.call(any(Prompt.class))).thenThrow(new IllegalStateException("model unavailable"));
+        Advisors advisors = advisors(Duration.ofSeconds(5));
+
+        ChatClientRequest request = advisors.ask();
+
+        assertThat(request.prompt().getUserMessage().getText()).contains("vacuum tuning notes");
+        assertThat(request.context()).doesNotContainKey(ENRICHED_QUESTION);
+
+        advisors.ask();
+        verify(vectorStoreRepository, times(2)).searchSimilar(any(), anyLong(), anyInt(), anyDouble(), anyInt());
+    }
+
+    @Test
+    void unexpandedQuestionIsSearchedOnce() {
+        expansionAnswers(QUESTION, false);
+        Advisors advisors = advisors(Duration.ofSeconds(5));
+
+        ChatClientRequest request = advisors.ask();
+
+        assertThat(request.prompt().getUserMessage().getText()).contains("vacuum tuning notes");
+        verify(vectorStoreRepository, times(1)).searchSimilar(any(), anyLong(), anyInt(), anyDouble(), anyInt());
+    }
+
+    private void expansionAnswers(String expansion, boolean late) {
+        when(chatModel.call(any(Prompt.class))).thenAnswer(call -> {
+            if (late) {
+                releaseExpansion.await(10, TimeUnit.SECONDS);
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(expansion))));
+        });
+    }
+
+    private Advisors advisors(Duration speculativeGrace) {
+        // Expansion caching is off so that every ask reaches the retrieval cache the same way
+        RagExpansionProperties expansionProperties = new RagExpansionProperties(0.0, 1, 0.1, 1.0,
+                false, 100, Duration.ofHours(1), 0, 1.2, 20, 32, Duration.ofSeconds(5), true, speculativeGrace);
+        ExpansionQueryAdvisor expansion = ExpansionQueryAdvisor.builder(chatModel, expansionProperties)
+                .expansionExecutor(expansionExecutor)
+                .order(1)
+                .build();
+
+        RetrievalCache retrievalCache = new RetrievalCache(
+                new RagRetrievalCacheProperties(true, 100, Duration.ZERO),
+                new RagKnowledgeBaseProperties(false, Path.of("knowledgebase"), "**.txt", null, 16),
+                new SimpleMeterRegistry());
+        RagAdvisor rag = RagAdvisor.build(vectorStoreRepository)
+                .embeddingModel(embeddingModel)
+                .searchTopK(4)
+                .rerankFetchMultiplier(2)
+                .similarityThreshold(0.5)
+                .rrfK(60)
+                .speculativeGrace(speculativeGrace)
+                .retrievalCache(retrievalCache)
+                .order(2)
+                .build();
+        return new Advisors(expansion, rag);
+    }
+
+    private record Advisors(ExpansionQueryAdvisor expansion, RagAdvisor rag) {
+
+        ChatClientRequest ask() {
+            ChatClientRequest request = ChatClientRequest.builder()
+                    .prompt(new Prompt(new UserMessage(QUESTION)))
+                    .context(Map.of(RagAdvisor.USER_ID, USER_ID))
+                    .build();
+            return rag.before(expansion.before(request, null), null);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.balex.rag.advisors.rag;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReciprocalRankFusionTest {
+
+    @Test
+    void documentsFoundByBothSearchesRankFirst() {
+        List<Document> vector = List.of(document("a"), document("b"), document("c"));
+        List<Document> lexical = List.of(document("d"), document("c"), document("e"));
+
+        List<Document> fused = ReciprocalRankFusion.fuse(List.of(vector, lexical), 60, 5);
+
+        assertThat(fused).extracting(Document::getId).containsExactly("c", "a", "d", "b", "e");
+    }
+
+    @Test
+    void sameRankInDifferentListsKeepsTheFirstListOrder() {
+        List<Document> vector = List.of(document("a"));
+        List<Document> lexical = List.of(document("b"));
+
+        List<Document> fused = ReciprocalRankFusion.fuse(List.of(vector, lexical), 60, 2);
+
+        assertThat(fused).extracting(Document::getId).containsExactly("a", "b");
+    }
+
+    @Test
+    void appliesTheLimit() {
+        List<Document> vector = List.of(document("a"), document("b"), document("c"));
+
+        assertThat(ReciprocalRankFusion.fuse(List.of(vector), 60, 2))
+                .extracting(Document::getId).containsExactly("a", "b");
+    }
+
+    @Test
+    void firstListWinsForDuplicateIds() {
+        Document fromVector = new Document("a", "vector text", Map.of());
+        Document fromLexical = new Document("a", "lexical text", Map.of());
+
+        List<Document> fused = ReciprocalRankFusion.fuse(List.of(List.of(fromVector), List.of(fromLexical)), 60, 5);
+
+        assertThat(fused).containsExactly(fromVector);
+    }
+
+    @Test
+    void skipsMissingRankings() {
+        List<Document> vector = List.of(document("a"));
+
+        List<Document> fused = ReciprocalRankFusion.fuse(Arrays.asList(vector, null), 60, 5);
+
+        assertThat(fused).extracting(Document::getId).containsExactly("a");
+    }
+
+    private static Document document(String id) {
+        return new Document(id, "text of " + id, Map.of());
+    }
+}
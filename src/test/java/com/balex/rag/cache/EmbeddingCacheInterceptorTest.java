@@ -0,0 +1,46 @@
+package com.balex.rag.cache;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingCacheInterceptorTest {
+
+    private final EmbeddingCacheInterceptor interceptor =
+            new EmbeddingCacheInterceptor("model", new LruCache<>(10, Duration.ZERO));
+    private final MethodInvocation invocation = mock(MethodInvocation.class);
+
+    @BeforeEach
+    void setUp() throws Throwable {
+        when(invocation.getMethod()).thenReturn(EmbeddingModel.class.getMethod("embed", String.class));
+        when(invocation.getArguments()).thenReturn(new Object[]{"What is HNSW?"});
+        when(invocation.proceed()).thenAnswer(call -> new float[]{1f, 2f});
+    }
+
+    @Test
+    void embedsAQuestionOnce() throws Throwable {
+        interceptor.invoke(invocation);
+        interceptor.invoke(invocation);
+
+        verify(invocation, times(1)).proceed();
+    }
+
+    @Test
+    void callersCannotChangeTheCachedEmbedding() throws Throwable {
+        float[] stored = (float[]) interceptor.invoke(invocation);
+        stored[0] = 42f;
+        float[] hit = (float[]) interceptor.invoke(invocation);
+        hit[1] = 42f;
+
+        assertThat((float[]) interceptor.invoke(invocation)).containsExactly(1f, 2f);
+    }
+}
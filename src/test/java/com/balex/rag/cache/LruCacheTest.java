@@ -0,0 +1,86 @@
+package com.balex.rag.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LruCacheTest {
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        LruCache<String, Integer> cache = new LruCache<>(2, Duration.ZERO);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+
+        cache.put("c", 3);
+
+        assertThat(cache.get("a")).isEqualTo(1);
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("c")).isEqualTo(3);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void expiresEntriesAfterTheTtl() throws InterruptedException {
+        LruCache<String, Integer> cache = new LruCache<>(10, Duration.ofMillis(1));
+        cache.put("a", 1);
+
+        Thread.sleep(5);
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void zeroTtlNeverExpires() throws InterruptedException {
+        LruCache<String, Integer> cache = new LruCache<>(10, Duration.ZERO);
+        cache.put("a", 1);
+
+        Thread.sleep(5);
+
+        assertThat(cache.get("a")).isEqualTo(1);
+    }
+
+    @Test
+    void zeroSizeStoresNothing() {
+        LruCache<String, Integer> cache = new LruCache<>(0, Duration.ZERO);
+        cache.put("a", 1);
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.putCount()).isZero();
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        LruCache<String, Integer> cache = new LruCache<>(10, null);
+        assertThat(cache.hitRate()).isZero();
+
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertThat(cache.hitCount()).isEqualTo(3);
+        assertThat(cache.missCount()).isEqualTo(1);
+        assertThat(cache.hitRate()).isEqualTo(0.75);
+    }
+
+    @Test
+    void invalidatesMatchingKeys() {
+        LruCache<String, Integer> cache = new LruCache<>(10, Duration.ZERO);
+        cache.put("user-1/a", 1);
+        cache.put("user-1/b", 2);
+        cache.put("user-2/a", 3);
+
+        cache.invalidateIf(key -> key.startsWith("user-1/"));
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get("user-2/a")).isEqualTo(3);
+    }
+}
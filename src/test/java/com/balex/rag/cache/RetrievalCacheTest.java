@@ -0,0 +1,116 @@
+package com.balex.rag.cache;
+
+import com.balex.rag.cache.RetrievalCache.Retrieval;
+import com.balex.rag.config.RagKnowledgeBaseProperties;
+import com.balex.rag.config.RagRetrievalCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetrievalCacheTest {
+
+    private static final long USER_ID = 1L;
+    private static final long OTHER_USER_ID = 2L;
+    private static final long SHARED_USER_ID = 99L;
+
+    private final RetrievalCache cache = new RetrievalCache(
+            new RagRetrievalCacheProperties(true, 100, Duration.ZERO),
+            new RagKnowledgeBaseProperties(true, Path.of("knowledgebase"), "**.txt", SHARED_USER_ID, 16),
+            new SimpleMeterRegistry());
+
+    private final AtomicInteger retrievals = new AtomicInteger();
+
+    @Test
+    void repeatedQuestionIsServedFromTheCache() {
+        List<Document> first = lookup(USER_ID, "What is Spring?");
+        List<Document> second = lookup(USER_ID, "  What is   Spring?");
+
+        assertThat(second).isEqualTo(first);
+        assertThat(retrievals.get()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidatingAUserDropsOnlyTheirResults() {
+        lookup(USER_ID, "question");
+        lookup(OTHER_USER_ID, "question");
+
+        cache.invalidateUser(USER_ID);
+
+        lookup(USER_ID, "question");
+        lookup(OTHER_USER_ID, "question");
+        assertThat(retrievals.get()).isEqualTo(3);
+    }
+
+    @Test
+    void changingTheSharedKnowledgeBaseInvalidatesEveryUser() {
+        lookup(USER_ID, "question");
+        lookup(OTHER_USER_ID, "question");
+
+        cache.invalidateUser(SHARED_USER_ID);
+
+        lookup(USER_ID, "question");
+        lookup(OTHER_USER_ID, "question");
+        assertThat(retrievals.get()).isEqualTo(4);
+    }
+
+    @Test
+    void resultRetrievedWhileTheDocumentsChangedIsNotCached() {
+        cache.getOrCompute(USER_ID, "question", 5, 0.5, 2, () -> {
+            retrievals.incrementAndGet();
+            cache.invalidateUser(USER_ID);
+            return Retrieval.of(List.of(new Document("stale")));
+        });
+
+        lookup(USER_ID, "question");
+        assertThat(retrievals.get()).isEqualTo(2);
+    }
+
+    @Test
+    void sharedKnowledgeBaseChangeDuringRetrievalIsNotCachedEither() {
+        cache.getOrCompute(USER_ID, "question", 5, 0.5, 2, () -> {
+            retrievals.incrementAndGet();
+            cache.invalidateUser(SHARED_USER_ID);
+            return Retrieval.of(List.of(new Document("stale")));
+        });
+
+        lookup(USER_ID, "question");
+        assertThat(retrievals.get()).isEqualTo(2);
+    }
+
+    @Test
+    void degradedResultIsServedButNotCached() {
+        List<Document> degraded = List.of(new Document("raw question hit"));
+
+        List<Document> served = cache.getOrCompute(USER_ID, "question", 5, 0.5, 2, () -> {
+            retrievals.incrementAndGet();
+            return Retrieval.degraded(degraded);
+        });
+
+        assertThat(served).isEqualTo(degraded);
+        lookup(USER_ID, "question");
+        assertThat(retrievals.get()).isEqualTo(2);
+    }
+
+    @Test
+    void differentRetrievalSettingsAreCachedSeparately() {
+        lookup(USER_ID, "question");
+        cache.getOrCompute(USER_ID, "question", 10, 0.5, 2, this::retrieve);
+
+        assertThat(retrievals.get()).isEqualTo(2);
+    }
+
+    private List<Document> lookup(Long userId, String query) {
+        return cache.getOrCompute(userId, query, 5, 0.5, 2, this::retrieve);
+    }
+
+    private Retrieval retrieve() {
+        return Retrieval.of(List.of(new Document("chunk " + retrievals.incrementAndGet())));
+    }
+}
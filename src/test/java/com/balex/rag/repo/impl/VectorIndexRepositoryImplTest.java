@@ -0,0 +1,49 @@
+package com.balex.rag.repo.impl;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class VectorIndexRepositoryImplTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final VectorIndexRepositoryImpl repository = new VectorIndexRepositoryImpl(jdbcTemplate);
+
+    @Test
+    void createsTheIndexConcurrentlyWithItsOptions() {
+        repository.createIndexConcurrently("vector_store_hnsw_index_new", "hnsw", List.of("m=16", "ef_construction=64"));
+
+        verify(jdbcTemplate).execute("CREATE INDEX CONCURRENTLY vector_store_hnsw_index_new ON vector_store "
+                + "USING hnsw (embedding vector_cosine_ops) WITH (m=16, ef_construction=64)");
+    }
+
+    @Test
+    void createsTheIndexWithoutAWithClauseWhenThereAreNoOptions() {
+        repository.createIndexConcurrently("vector_store_hnsw_index_new", "hnsw", List.of());
+
+        verify(jdbcTemplate).execute("CREATE INDEX CONCURRENTLY vector_store_hnsw_index_new ON vector_store "
+                + "USING hnsw (embedding vector_cosine_ops)");
+    }
+
+    @Test
+    void dropToleratesAMissingIndex() {
+        repository.dropIndexConcurrently("vector_store_hnsw_index_old");
+
+        verify(jdbcTemplate).execute("DROP INDEX CONCURRENTLY IF EXISTS vector_store_hnsw_index_old");
+    }
+
+    @Test
+    void swapRenamesTheLiveIndexAsideBeforeTheNewOneTakesItsName() {
+        repository.swapIndex("vector_store_hnsw_index", "vector_store_hnsw_index_new", "vector_store_hnsw_index_old");
+
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute("ALTER INDEX IF EXISTS vector_store_hnsw_index RENAME TO vector_store_hnsw_index_old");
+        order.verify(jdbcTemplate).execute("ALTER INDEX vector_store_hnsw_index_new RENAME TO vector_store_hnsw_index");
+    }
+}
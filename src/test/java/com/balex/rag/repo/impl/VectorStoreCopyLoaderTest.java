@@ -0,0 +1,74 @@
+package com.balex.rag.repo.impl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VectorStoreCopyLoaderTest extends PostgresRepositoryTestBase {
+
+    private static final String METADATA = "{\"user_id\": 1, \"ingestion_id\": \"ingestion-1\"}";
+
+    @Test
+    void copiedRowsAreMergedAsPending() {
+        VectorStoreCopyLoader loader = new VectorStoreCopyLoader(jdbcTemplate);
+
+        transactionTemplate.executeWithoutResult(status -> loader.load(
+                List.of(new Document("a", "first chunk", Map.of()), new Document("b", "it's \"quoted\"\n", Map.of())),
+                List.of(METADATA, METADATA),
+                List.of(new float[]{1f, 2f, 3f}, new float[]{4f, 5f, 6f})));
+
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT id, content, user_id, pending FROM vector_store ORDER BY id"))
+                .containsExactly(
+                        Map.of("id", "a", "content", "first chunk", "user_id", 1L, "pending", true),
+                        Map.of("id", "b", "content", "it's \"quoted\"\n", "user_id", 1L, "pending", true));
+    }
+
+    @Test
+    void secondLoadInTheSameTransactionDoesNotMergeTheFirstAgain() {
+        VectorStoreCopyLoader loader = new VectorStoreCopyLoader(jdbcTemplate);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            loader.load(List.of(new Document("a", "first", Map.of())), List.of(METADATA), List.of(new float[]{1f}));
+            jdbcTemplate.update("UPDATE vector_store SET content = 'published' WHERE id = 'a'");
+            loader.load(List.of(new Document("b", "second", Map.of())), List.of(METADATA), List.of(new float[]{2f}));
+        });
+
+        assertThat(jdbcTemplate.queryForList("SELECT id, content FROM vector_store ORDER BY id"))
+                .containsExactly(Map.of("id", "a", "content", "published"), Map.of("id", "b", "content", "second"));
+    }
+
+    @Test
+    void failedCopyRollsBackAndLeavesTheConnectionUsable() throws Exception {
+        try (Connection connection = jdbcTemplate.getDataSource().getConnection()) {
+            // One connection throughout, as a pooled connection would be handed out again
+            SingleConnectionDataSource dataSource = new SingleConnectionDataSource(connection, true);
+            JdbcTemplate single = new JdbcTemplate(dataSource);
+            TransactionTemplate transactions = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+            VectorStoreCopyLoader loader = new VectorStoreCopyLoader(single);
+
+            // The stream breaks off at the second row, which has no embedding
+            assertThatThrownBy(() -> transactions.executeWithoutResult(status -> loader.load(
+                    List.of(new Document("a", "first", Map.of()), new Document("b", "second", Map.of())),
+                    List.of(METADATA, METADATA),
+                    List.of(new float[]{1f}))))
+                    .isInstanceOf(IndexOutOfBoundsException.class);
+
+            assertThat(single.queryForObject("SELECT count(*) FROM vector_store", Integer.class)).isZero();
+
+            transactions.executeWithoutResult(status -> loader.load(
+                    List.of(new Document("c", "third", Map.of())), List.of(METADATA), List.of(new float[]{1f})));
+            assertThat(single.queryForList("SELECT id FROM vector_store", String.class)).containsExactly("c");
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.balex.rag.repo.impl;
+
+import com.balex.rag.advisors.rag.Bm25CorpusIndex;
+import com.balex.rag.config.RagIngestionProperties;
+import com.balex.rag.config.RagKnowledgeBaseProperties;
+import com.balex.rag.config.RagVectorIndexProperties;
+import com.balex.rag.model.enums.VectorIndexType;
+import com.balex.rag.service.ingest.ChunkEmbedder;
+import com.balex.rag.service.ingest.DocumentChunker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VectorStoreRepositoryImplTest extends PostgresRepositoryTestBase {
+
+    private static final long USER_ID = 1L;
+    private static final long OTHER_USER_ID = 2L;
+    private static final long SHARED_USER_ID = 99L;
+
+    private final RagIngestionProperties ingestionProperties = mock(RagIngestionProperties.class);
+    private VectorStoreCopyLoader copyLoader;
+    private VectorStoreRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        when(ingestionProperties.effectiveCopyMinChunks(anyInt())).thenReturn(0);
+        copyLoader = spy(new VectorStoreCopyLoader(jdbcTemplate));
+        repository = repository(null);
+    }
+
+    @Test
+    void chunksAreCopiedFromTheThresholdOnAndInsertedBelowIt() {
+        when(ingestionProperties.effectiveCopyMinChunks(anyInt())).thenReturn(2);
+
+        repository.insertChunks(List.of(chunk("small")), List.of(new float[]{1f, 0f, 0f}));
+        verify(copyLoader, never()).load(anyList(), anyList(), anyList());
+
+        // insertChunks is transactional through its proxy; COPY needs the staging table on one connection
+        transactionTemplate.executeWithoutResult(status -> repository.insertChunks(
+                List.of(chunk("large-1"), chunk("large-2")),
+                List.of(new float[]{1f, 0f, 0f}, new float[]{0f, 1f, 0f})));
+        verify(copyLoader).load(anyList(), anyList(), anyList());
+
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM vector_store WHERE pending ORDER BY id", String.class))
+                .containsExactly("large-1", "large-2", "small");
+    }
+
+    @Test
+    void lexicalSearchOrsTheQueryTerms() {
+        store("both", USER_ID, "postgres vacuum tuning");
+        store("one", USER_ID, "postgres replication");
+        store("none", USER_ID, "kafka consumer groups");
+
+        assertThat(repository.searchLexical("postgres vacuum", USER_ID, 10))
+                .extracting(Document::getId)
+                .containsExactly("both", "one");
+    }
+
+    @Test
+    void lexicalSearchCopesWithPunctuationAndBackslashes() {
+        store("path", USER_ID, "logs live in C:\\temp\\rag and O'Reilly wrote about it");
+
+        assertThat(repository.searchLexical("C:\\temp\\rag O'Reilly \"quoted\" a\\b (x|y) & !z :* \\", USER_ID, 10))
+                .extracting(Document::getId)
+                .containsExactly("path");
+        assertThat(repository.searchLexical("\\\\server\\share 'don''t' foo-bar", USER_ID, 10))
+                .isEmpty();
+    }
+
+    @Test
+    void queryWithoutLexemesMatchesNothing() {
+        store("chunk", USER_ID, "postgres vacuum tuning");
+
+        assertThat(repository.searchLexical("?! -- \\ ''", USER_ID, 10)).isEmpty();
+        assertThat(repository.searchLexical("", USER_ID, 10)).isEmpty();
+    }
+
+    @Test
+    void similaritySearchSeesOnlyTheUsersPublishedChunks() {
+        store("mine", USER_ID, "postgres vacuum tuning");
+        store("theirs", OTHER_USER_ID, "postgres vacuum tuning");
+        store("shared", SHARED_USER_ID, "postgres vacuum tuning");
+        storePending("draft", USER_ID, "postgres vacuum tuning");
+
+        assertThat(repository.searchSimilar(new float[]{1f, 0f, 0f}, USER_ID, 10, 0.0, 0))
+                .extracting(Document::getId)
+                .containsExactly("mine");
+        assertThat(repository.searchLexical("postgres", USER_ID, 10))
+                .extracting(Document::getId)
+                .containsExactly("mine");
+    }
+
+    @Test
+    void sharedKnowledgeBaseIsSearchedForEveryUser() {
+        repository = repository(SHARED_USER_ID);
+        store("mine", USER_ID, "postgres vacuum tuning");
+        store("theirs", OTHER_USER_ID, "postgres vacuum tuning");
+        store("shared", SHARED_USER_ID, "postgres vacuum tuning");
+
+        assertThat(repository.searchSimilar(new float[]{1f, 0f, 0f}, USER_ID, 10, 0.0, 0))
+                .extracting(Document::getId)
+                .containsExactlyInAnyOrder("mine", "shared");
+        assertThat(repository.searchLexical("postgres", OTHER_USER_ID, 10))
+                .extracting(Document::getId)
+                .containsExactlyInAnyOrder("theirs", "shared");
+    }
+
+    @Test
+    void similaritySearchKeepsTheTenantFilterWithinTopK() {
+        store("theirs-1", OTHER_USER_ID, "a");
+        store("theirs-2", OTHER_USER_ID, "b");
+        store("mine", USER_ID, "c", new float[]{0.2f, 1f, 0f});
+
+        // The other tenant's chunks are closer but must not use up the top-1
+        assertThat(repository.searchSimilar(new float[]{1f, 0f, 0f}, USER_ID, 1, 0.0, 0))
+                .extracting(Document::getId)
+                .containsExactly("mine");
+    }
+
+    @Test
+    void storedEmbeddingsAreFoundByChunkHashAcrossUsers() {
+        storeHashed("theirs", OTHER_USER_ID, "hash-a", "mxbai-embed-large", new float[]{1f, 2f, 3f});
+        storeHashed("other-model", OTHER_USER_ID, "hash-b", "nomic-embed-text", new float[]{1f, 2f, 3f});
+        storeHashed("other-dimensions", OTHER_USER_ID, "hash-c", "mxbai-embed-large", new float[]{1f, 2f});
+
+        Map<String, float[]> found = repository.findEmbeddingsByChunkHash(
+                List.of("hash-a", "hash-b", "hash-c", "hash-unknown"), "mxbai-embed-large", 3);
+
+        assertThat(found).containsOnlyKeys("hash-a");
+        assertThat(found.get("hash-a")).containsExactly(1f, 2f, 3f);
+    }
+
+    private VectorStoreRepositoryImpl repository(Long sharedUserId) {
+        RagVectorIndexProperties indexProperties = new RagVectorIndexProperties(
+                VectorIndexType.HNSW, 16, 64, 100, false, true, Duration.ofSeconds(5));
+        RagKnowledgeBaseProperties knowledgeBaseProperties = new RagKnowledgeBaseProperties(
+                sharedUserId != null, Path.of("knowledgebase"), "**.txt", sharedUserId, 16);
+        return new VectorStoreRepositoryImpl(jdbcTemplate, new Bm25CorpusIndex(), new ObjectMapper(),
+                indexProperties, ingestionProperties, copyLoader, knowledgeBaseProperties);
+    }
+
+    private void store(String id, long userId, String text) {
+        store(id, userId, text, new float[]{1f, 0f, 0f});
+    }
+
+    private void store(String id, long userId, String text, float[] embedding) {
+        storePending(id, userId, text, embedding);
+        repository.publishIngestion("ingestion-" + id);
+    }
+
+    private static Document chunk(String id) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("user_id", USER_ID);
+        metadata.put("ingestion_id", "ingestion-" + id);
+        return new Document(id, "text of " + id, metadata);
+    }
+
+    private void storeHashed(String id, long userId, String chunkHash, String embeddingModel, float[] embedding) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("user_id", userId);
+        metadata.put("ingestion_id", "ingestion-" + id);
+        metadata.put(DocumentChunker.CHUNK_HASH_FIELD_NAME, chunkHash);
+        metadata.put(ChunkEmbedder.EMBEDDING_MODEL_FIELD_NAME, embeddingModel);
+        repository.insertChunks(List.of(new Document(id, "text of " + id, metadata)), List.of(embedding));
+        repository.publishIngestion("ingestion-" + id);
+    }
+
+    private void storePending(String id, long userId, String text) {
+        storePending(id, userId, text, new float[]{1f, 0f, 0f});
+    }
+
+    private void storePending(String id, long userId, String text, float[] embedding) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("user_id", userId);
+        metadata.put("ingestion_id", "ingestion-" + id);
+        repository.insertChunks(List.of(new Document(id, text, metadata)), List.of(embedding));
+    }
+}
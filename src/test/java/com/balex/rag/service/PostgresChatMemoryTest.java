@@ -0,0 +1,140 @@
+package com.balex.rag.service;
+
+import com.balex.rag.model.entity.Chat;
+import com.balex.rag.model.entity.ChatEntry;
+import com.balex.rag.model.enums.Role;
+import com.balex.rag.repo.ChatEntryRepository;
+import com.balex.rag.repo.ChatRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.data.domain.Limit;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PostgresChatMemoryTest {
+
+    private static final Long CHAT_ID = 1L;
+    private static final String CONVERSATION_ID = "1";
+
+    private final ChatRepository chatRepository = mock(ChatRepository.class);
+    private final ChatEntryRepository chatEntryRepository = mock(ChatEntryRepository.class);
+    private final TokenCountEstimator tokenEstimator = mock(TokenCountEstimator.class);
+    private final ChatSummarizer summarizer = mock(ChatSummarizer.class);
+
+    @BeforeEach
+    void setUp() {
+        // One token per word keeps the budgets readable
+        when(tokenEstimator.estimate(anyString()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(0).split(" ").length);
+    }
+
+    @Test
+    void fittingTailStopsAtTheTokenBudget() {
+        assertThat(PostgresChatMemory.fittingTail(List.of(3, 3, 3), 7, 10)).isEqualTo(2);
+        assertThat(PostgresChatMemory.fittingTail(List.of(3, 3, 3), 9, 10)).isEqualTo(3);
+        assertThat(PostgresChatMemory.fittingTail(List.of(8, 1), 7, 10)).isZero();
+    }
+
+    @Test
+    void fittingTailStopsAtTheMessageLimit() {
+        assertThat(PostgresChatMemory.fittingTail(List.of(1, 1, 1, 1), 100, 2)).isEqualTo(2);
+        assertThat(PostgresChatMemory.fittingTail(List.of(), 100, 2)).isZero();
+    }
+
+    @Test
+    void fittingTailWithoutBudgetOnlyAppliesTheLimit() {
+        assertThat(PostgresChatMemory.fittingTail(List.of(50, 50, 50), 0, 2)).isEqualTo(2);
+    }
+
+    @Test
+    void packsSummaryAndEntriesOldestFirst() {
+        storedChat("earlier facts", entry(2L, Role.ASSISTANT, "hi there"), entry(1L, Role.USER, "hello"));
+
+        List<Message> messages = memory(10, 100, 4).get(CONVERSATION_ID);
+
+        assertThat(messages).hasSize(3);
+        assertThat(messages.get(0)).isInstanceOf(SystemMessage.class);
+        assertThat(messages.get(0).getText()).endsWith("earlier facts");
+        assertThat(messages.subList(1, 3)).extracting(Message::getText).containsExactly("hello", "hi there");
+        verify(summarizer, never()).requestCompaction(eq(CHAT_ID), any());
+    }
+
+    @Test
+    void leavesOutTheQuestionBeingAsked() {
+        storedChat(null, entry(3L, Role.USER, "new question"),
+                entry(2L, Role.ASSISTANT, "answer"), entry(1L, Role.USER, "question"));
+
+        List<Message> messages = memory(10, 100, 4).get(CONVERSATION_ID);
+
+        assertThat(messages).extracting(Message::getText).containsExactly("question", "answer");
+    }
+
+    @Test
+    void entriesOverTheBudgetAreLeftOutAndCompacted() {
+        storedChat(null, entry(3L, Role.ASSISTANT, "three words here"),
+                entry(2L, Role.USER, "two words"), entry(1L, Role.ASSISTANT, "one"));
+
+        List<Message> messages = memory(10, 5, 4).get(CONVERSATION_ID);
+
+        assertThat(messages).extracting(Message::getText).containsExactly("two words", "three words here");
+        verify(summarizer).requestCompaction(eq(CHAT_ID), any());
+    }
+
+    @Test
+    void evictionsCompactOnlyOnceEnoughPiledUp() {
+        storedChat(null, entry(2L, Role.ASSISTANT, "answer"), entry(1L, Role.USER, "question"));
+        PostgresChatMemory memory = memory(2, 0, 2);
+        memory.get(CONVERSATION_ID);
+
+        memory.add(CONVERSATION_ID, List.of(new UserMessage("next question")));
+        assertThat(memory.get(CONVERSATION_ID)).extracting(Message::getText)
+                .containsExactly("answer", "next question");
+        verify(summarizer, never()).requestCompaction(eq(CHAT_ID), any());
+
+        memory.add(CONVERSATION_ID, List.of(new AssistantMessage("next answer")));
+        assertThat(memory.get(CONVERSATION_ID)).extracting(Message::getText)
+                .containsExactly("next question", "next answer");
+        verify(summarizer).requestCompaction(eq(CHAT_ID), any());
+    }
+
+    private PostgresChatMemory memory(int maxMessages, int tokenBudget, int summaryMinEvicted) {
+        return PostgresChatMemory.builder()
+                .chatRepository(chatRepository)
+                .chatEntryRepository(chatEntryRepository)
+                .tokenEstimator(tokenEstimator)
+                .summarizer(summarizer)
+                .maxMessages(maxMessages)
+                .tokenBudget(tokenBudget)
+                .summaryMinEvicted(summaryMinEvicted)
+                .maxConversations(10)
+                .ttl(Duration.ZERO)
+                .build();
+    }
+
+    private void storedChat(String summary, ChatEntry... newestFirst) {
+        Chat chat = Chat.builder().id(CHAT_ID).summary(summary).build();
+        when(chatRepository.findById(CHAT_ID)).thenReturn(Optional.of(chat));
+        when(chatEntryRepository.findByChatIdAndIdGreaterThanOrderByCreatedAtDesc(eq(CHAT_ID), eq(0L), any(Limit.class)))
+                .thenReturn(List.of(newestFirst));
+    }
+
+    private static ChatEntry entry(Long id, Role role, String content) {
+        return ChatEntry.builder().id(id).role(role).content(content).build();
+    }
+}
@@ -0,0 +1,158 @@
+package com.balex.rag.service.autostart;
+
+import com.balex.rag.config.RagKnowledgeBaseProperties;
+import com.balex.rag.model.IngestionJob;
+import com.balex.rag.model.KnowledgeBaseFile;
+import com.balex.rag.repo.KnowledgeBaseFileRepository;
+import com.balex.rag.service.IngestionJobService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocumentLoaderServiceTest {
+
+    private static final long OWNER_ID = 99L;
+    private static final long MODIFIED_MILLIS = 1_700_000_000_000L;
+
+    @TempDir
+    Path root;
+
+    private final KnowledgeBaseFileRepository knowledgeBaseFileRepository = mock(KnowledgeBaseFileRepository.class);
+    private final IngestionJobService ingestionJobService = mock(IngestionJobService.class);
+
+    @Test
+    void onlyNewAndChangedFilesAreSubmitted() throws IOException {
+        write("same.txt", "unchanged");
+        write("resized.txt", "grown since the last load");
+        write("touched.txt", "same size");
+        write("docs/new.txt", "new");
+        write("notes.md", "not matched by the pattern");
+        when(knowledgeBaseFileRepository.findLoaded()).thenReturn(Map.of(
+                "same.txt", new KnowledgeBaseFile("same.txt", 9, MODIFIED_MILLIS),
+                "resized.txt", new KnowledgeBaseFile("resized.txt", 5, MODIFIED_MILLIS),
+                "touched.txt", new KnowledgeBaseFile("touched.txt", 9, MODIFIED_MILLIS - 1000)));
+        when(knowledgeBaseFileRepository.findPaths()).thenReturn(List.of("same.txt", "resized.txt", "touched.txt"));
+        submittedJob(1L);
+
+        loader(16).loadDocuments();
+
+        Map<String, Path> files = submittedFiles(1).getFirst();
+        assertThat(files).containsOnlyKeys("resized.txt", "touched.txt", "docs/new.txt");
+        assertThat(files.get("docs/new.txt")).isEqualTo(root.resolve("docs/new.txt"));
+        verify(knowledgeBaseFileRepository).saveAll(manifestOf(files), 1L);
+        verify(ingestionJobService, never()).removeLocal(anyCollection(), anyLong());
+    }
+
+    @Test
+    void unchangedDirectorySubmitsNothing() throws IOException {
+        write("same.txt", "unchanged");
+        when(knowledgeBaseFileRepository.findLoaded()).thenReturn(Map.of(
+                "same.txt", new KnowledgeBaseFile("same.txt", 9, MODIFIED_MILLIS)));
+        when(knowledgeBaseFileRepository.findPaths()).thenReturn(List.of("same.txt"));
+
+        loader(16).loadDocuments();
+
+        verify(ingestionJobService, never()).submitLocal(anyMap(), anyLong());
+        verify(knowledgeBaseFileRepository, never()).saveAll(any(), any());
+    }
+
+    @Test
+    void deletedFilesAreRemovedFromTheStoreAndTheManifest() throws IOException {
+        write("kept.txt", "unchanged");
+        when(knowledgeBaseFileRepository.findLoaded()).thenReturn(Map.of(
+                "kept.txt", new KnowledgeBaseFile("kept.txt", 9, MODIFIED_MILLIS)));
+        when(knowledgeBaseFileRepository.findPaths()).thenReturn(List.of("kept.txt", "gone.txt", "queued.txt"));
+        // A queued job still owns its file even though it is gone from the directory
+        when(ingestionJobService.findUnfinishedFilenames(OWNER_ID)).thenReturn(Set.of("queued.txt"));
+
+        loader(16).loadDocuments();
+
+        verify(ingestionJobService).removeLocal(List.of("gone.txt"), OWNER_ID);
+        verify(knowledgeBaseFileRepository).deleteAll(List.of("gone.txt"));
+    }
+
+    @Test
+    void filesOfUnfinishedJobsAreLeftToThoseJobs() throws IOException {
+        write("queued.txt", "changed");
+        write("new.txt", "new");
+        when(knowledgeBaseFileRepository.findLoaded()).thenReturn(Map.of());
+        when(knowledgeBaseFileRepository.findPaths()).thenReturn(List.of("queued.txt"));
+        when(ingestionJobService.findUnfinishedFilenames(OWNER_ID)).thenReturn(Set.of("queued.txt"));
+        submittedJob(1L);
+
+        loader(16).loadDocuments();
+
+        assertThat(submittedFiles(1).getFirst()).containsOnlyKeys("new.txt");
+    }
+
+    @Test
+    void changedFilesAreSubmittedInBatches() throws IOException {
+        write("a.txt", "a");
+        write("b.txt", "b");
+        write("c.txt", "c");
+        when(knowledgeBaseFileRepository.findLoaded()).thenReturn(Map.of());
+        when(knowledgeBaseFileRepository.findPaths()).thenReturn(List.of());
+        submittedJob(1L);
+
+        loader(2).loadDocuments();
+
+        List<Map<String, Path>> batches = submittedFiles(2);
+        assertThat(batches).extracting(Map::size).containsExactly(2, 1);
+        assertThat(batches.stream().flatMap(batch -> batch.keySet().stream()))
+                .containsExactlyInAnyOrder("a.txt", "b.txt", "c.txt");
+        verify(knowledgeBaseFileRepository, times(2)).saveAll(any(), any());
+    }
+
+    private DocumentLoaderService loader(int batchFiles) {
+        RagKnowledgeBaseProperties properties = new RagKnowledgeBaseProperties(
+                true, root, "**.txt", OWNER_ID, batchFiles);
+        return new DocumentLoaderService(knowledgeBaseFileRepository, ingestionJobService, properties);
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(MODIFIED_MILLIS));
+    }
+
+    private void submittedJob(Long jobId) {
+        when(ingestionJobService.submitLocal(anyMap(), anyLong()))
+                .thenReturn(IngestionJob.builder().id(jobId).build());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Path>> submittedFiles(int jobs) {
+        ArgumentCaptor<Map<String, Path>> files = ArgumentCaptor.forClass(Map.class);
+        verify(ingestionJobService, times(jobs)).submitLocal(files.capture(), anyLong());
+        return files.getAllValues();
+    }
+
+    private List<KnowledgeBaseFile> manifestOf(Map<String, Path> files) throws IOException {
+        List<KnowledgeBaseFile> manifest = new ArrayList<>();
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            manifest.add(new KnowledgeBaseFile(file.getKey(), Files.size(file.getValue()), MODIFIED_MILLIS));
+        }
+        return manifest;
+    }
+}
@@ -0,0 +1,122 @@
+package com.balex.rag.service.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatestValuePublisherTest {
+
+    private final LatestValuePublisher<Integer> publisher = new LatestValuePublisher<>("test");
+
+    @Test
+    void lateSubscriberGetsTheLatestValue() throws Exception {
+        publisher.publish(1);
+        publisher.publish(2);
+
+        BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+        publisher.subscribe(received::add);
+
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(received.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void slowSubscriberSkipsToTheNewestValueWithoutHoldingUpOthers() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<Integer> slow = new LinkedBlockingQueue<>();
+        publisher.subscribe(value -> {
+            slow.add(value);
+            blocked.countDown();
+            await(release);
+        });
+        BlockingQueue<Integer> fast = new LinkedBlockingQueue<>();
+        publisher.subscribe(fast::add);
+
+        publisher.publish(1);
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        // Returns although the slow subscriber is still busy with the first value
+        for (int value = 2; value <= 100; value++) {
+            publisher.publish(value);
+        }
+        assertThat(awaitValue(fast, 100)).isTrue();
+
+        release.countDown();
+        assertThat(slow.poll(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(slow.poll(5, TimeUnit.SECONDS)).isEqualTo(100);
+        assertThat(slow.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void everySubscriberEndsWithTheLastValue() throws Exception {
+        List<BlockingQueue<Integer>> subscribers = List.of(
+                new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>());
+        subscribers.forEach(received -> publisher.subscribe(received::add));
+
+        for (int value = 1; value <= 1000; value++) {
+            publisher.publish(value);
+        }
+
+        for (BlockingQueue<Integer> received : subscribers) {
+            assertThat(awaitValue(received, 1000)).isTrue();
+        }
+    }
+
+    @Test
+    void failingSubscriberIsDroppedAndOthersKeepReceiving() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        publisher.subscribe(value -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("client gone");
+        });
+        BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+        publisher.subscribe(received::add);
+
+        publisher.publish(1);
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(1);
+        publisher.publish(2);
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(2);
+
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void unsubscribedSubscriberReceivesNothingMore() throws Exception {
+        BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+        Runnable unsubscribe = publisher.subscribe(received::add);
+        publisher.publish(1);
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(1);
+
+        unsubscribe.run();
+        publisher.publish(2);
+
+        assertThat(received.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    // Intermediate values may be skipped, so waits until the expected one arrives
+    private static boolean awaitValue(BlockingQueue<Integer> received, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            Integer value = received.poll(10, TimeUnit.MILLISECONDS);
+            if (value != null && value == expected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.balex.rag.service.concurrent;
+
+import com.balex.rag.config.RagTaskExecutorProperties;
+import com.balex.rag.model.enums.TaskExecutorType;
+import com.balex.rag.model.enums.UserTaskKind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserTaskExecutorTest {
+
+    private static final Runnable NOTHING = () -> {
+    };
+
+    private UserTaskExecutor executor;
+
+    @AfterEach
+    void shutDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void tasksOverTheUserLimitWaitForARunningOne() throws Exception {
+        executor = platform(4, 16, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+
+        executor.execute(UserTaskKind.INGESTION, 1L, () -> await(release), UserTaskExecutorTest::fail);
+        executor.execute(UserTaskKind.INGESTION, 1L, secondStarted::countDown, UserTaskExecutorTest::fail);
+
+        assertThat(secondStarted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        release.countDown();
+        assertThat(secondStarted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void chatStreamsDoNotWaitForUploads() throws Exception {
+        executor = platform(4, 16, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch streamStarted = new CountDownLatch(1);
+
+        executor.execute(UserTaskKind.INGESTION, 1L, () -> await(release), UserTaskExecutorTest::fail);
+        executor.execute(UserTaskKind.CHAT_STREAM, 1L, streamStarted::countDown, UserTaskExecutorTest::fail);
+
+        assertThat(streamStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    void fullPoolQueueRejectsRightAwayAndFreesTheSlot() throws Exception {
+        executor = platform(1, 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(UserTaskKind.INGESTION, 1L, () -> await(release), UserTaskExecutorTest::fail);
+        executor.execute(UserTaskKind.INGESTION, 2L, NOTHING, UserTaskExecutorTest::fail);
+
+        assertThatThrownBy(() -> executor.execute(UserTaskKind.INGESTION, 3L, NOTHING, UserTaskExecutorTest::fail))
+                .isInstanceOf(RejectedExecutionException.class);
+
+        release.countDown();
+        CountDownLatch retried = new CountDownLatch(1);
+        awaitAccepted(() -> executor.execute(UserTaskKind.INGESTION, 3L, retried::countDown,
+                UserTaskExecutorTest::fail));
+        assertThat(retried.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void queuedTaskRejectedByAFullPoolIsHandedToItsRejectionHandler() throws Exception {
+        executor = platform(1, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<RejectedExecutionException> rejected = new CompletableFuture<>();
+        CountDownLatch queuedRan = new CountDownLatch(1);
+
+        // User 1 holds the only pool thread and has a second task waiting for its slot
+        executor.execute(UserTaskKind.CHAT_STREAM, 1L, () -> await(release), UserTaskExecutorTest::fail);
+        executor.execute(UserTaskKind.CHAT_STREAM, 1L, queuedRan::countDown, rejected::complete);
+        // User 2 fills the pool queue, so the waiting task cannot be dispatched when the slot frees up
+        executor.execute(UserTaskKind.CHAT_STREAM, 2L, NOTHING, UserTaskExecutorTest::fail);
+
+        release.countDown();
+
+        assertThat(rejected.get(5, TimeUnit.SECONDS)).isInstanceOf(RejectedExecutionException.class);
+        assertThat(queuedRan.getCount()).isEqualTo(1);
+
+        // The slot of the rejected task is released as well
+        CountDownLatch next = new CountDownLatch(1);
+        awaitAccepted(() -> executor.execute(UserTaskKind.CHAT_STREAM, 1L, next::countDown,
+                UserTaskExecutorTest::fail));
+        assertThat(next.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static UserTaskExecutor platform(int poolSize, int queueCapacity, int maxTasksPerUser) {
+        RagTaskExecutorProperties properties = new RagTaskExecutorProperties(
+                TaskExecutorType.PLATFORM, poolSize, queueCapacity, maxTasksPerUser, maxTasksPerUser);
+        return new UserTaskExecutor(properties, new SimpleMeterRegistry());
+    }
+
+    // The pool drains its queue asynchronously once the blocking task is released
+    private static void awaitAccepted(Runnable submit) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                submit.run();
+                return;
+            } catch (RejectedExecutionException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void fail(RejectedExecutionException e) {
+        throw new AssertionError("Task was rejected", e);
+    }
+}
@@ -0,0 +1,172 @@
+package com.balex.rag.service.impl;
+
+import com.balex.rag.config.RagChatStreamProperties;
+import com.balex.rag.model.entity.Chat;
+import com.balex.rag.model.entity.ChatEntry;
+import com.balex.rag.model.enums.Role;
+import com.balex.rag.model.enums.SlowClientPolicy;
+import com.balex.rag.model.enums.UserTaskKind;
+import com.balex.rag.repo.ChatEntryRepository;
+import com.balex.rag.repo.ChatRepository;
+import com.balex.rag.repo.UserRepository;
+import com.balex.rag.security.validation.AccessValidator;
+import com.balex.rag.service.concurrent.UserTaskExecutor;
+import com.balex.rag.utils.ApiUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.nio.file.AccessDeniedException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatEntryServiceImplTest {
+
+    private static final long CHAT_ID = 10L;
+    private static final int OWNER_ID = 1;
+    private static final int OTHER_USER_ID = 2;
+
+    private final ChatEntryRepository chatEntryRepository = mock(ChatEntryRepository.class);
+    private final ChatRepository chatRepository = mock(ChatRepository.class);
+    private final ChatClient chatClient = mock(ChatClient.class);
+    private final ChatClient.ChatClientRequestSpec request = mock(ChatClient.ChatClientRequestSpec.class, RETURNS_SELF);
+    private final ChatClient.StreamResponseSpec response = mock(ChatClient.StreamResponseSpec.class);
+    private final ChatMemory chatMemory = mock(ChatMemory.class);
+    private final UserTaskExecutor userTaskExecutor = mock(UserTaskExecutor.class);
+    private final ApiUtils apiUtils = mock(ApiUtils.class);
+
+    private final ChatEntryServiceImpl service = new ChatEntryServiceImpl(chatEntryRepository, chatRepository,
+            chatClient, chatMemory, userTaskExecutor,
+            new RagChatStreamProperties(Duration.ofMillis(10), 32, 64, SlowClientPolicy.DROP),
+            new AccessValidator(mock(UserRepository.class), apiUtils), apiUtils);
+
+    private final CountDownLatch streamed = new CountDownLatch(1);
+    private Thread generation;
+
+    @BeforeEach
+    void setUp() {
+        Chat chat = Chat.builder().id(CHAT_ID).idOwner((long) OWNER_ID).build();
+        when(chatRepository.findById(CHAT_ID)).thenReturn(Optional.of(chat));
+        when(chatEntryRepository.save(any())).thenAnswer(call -> call.getArgument(0));
+
+        when(chatClient.prompt()).thenReturn(request);
+        when(request.stream()).thenReturn(response);
+
+        // Runs the generation on a thread of its own, as the executor would
+        doAnswer(call -> {
+            generation = Thread.ofVirtual().start(call.<Runnable>getArgument(2));
+            return null;
+        }).when(userTaskExecutor).execute(any(UserTaskKind.class), anyLong(), any(Runnable.class), any());
+    }
+
+    @Test
+    void otherUsersCannotAskReadOrCancelInTheChat() {
+        asUser(OTHER_USER_ID);
+
+        assertThatThrownBy(() -> service.streamUserEntry(CHAT_ID, "question", false, 5, 0.5))
+                .isInstanceOf(AccessDeniedException.class);
+        assertThatThrownBy(() -> service.getEntriesByChatId(CHAT_ID))
+                .isInstanceOf(AccessDeniedException.class);
+        assertThatThrownBy(() -> service.cancelGeneration(CHAT_ID))
+                .isInstanceOf(AccessDeniedException.class);
+
+        verify(chatEntryRepository, never()).save(any());
+        verify(userTaskExecutor, never()).execute(any(UserTaskKind.class), anyLong(), any(Runnable.class), any());
+    }
+
+    @Test
+    void otherUserCannotStopTheOwnersAnswer() throws Exception {
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        when(response.content()).thenReturn(tokens.asFlux().doOnSubscribe(subscription -> subscribed.countDown()));
+        asUser(OWNER_ID);
+        service.streamUserEntry(CHAT_ID, "question", false, 5, 0.5);
+        assertThat(subscribed.await(5, TimeUnit.SECONDS)).isTrue();
+
+        asUser(OTHER_USER_ID);
+        assertThatThrownBy(() -> service.cancelGeneration(CHAT_ID)).isInstanceOf(AccessDeniedException.class);
+
+        tokens.tryEmitNext("complete answer");
+        tokens.tryEmitComplete();
+        generation.join(5000);
+
+        assertThat(savedEntries()).extracting(ChatEntry::getRole, ChatEntry::getContent)
+                .containsExactly(
+                        tuple(Role.USER, "question"),
+                        tuple(Role.ASSISTANT, "complete answer"));
+        verify(chatMemory, never()).clear(any());
+    }
+
+    @Test
+    void cancelledAnswerIsSavedAsFarAsItGot() throws Exception {
+        when(response.content()).thenReturn(streaming("partial", " answer"));
+        asUser(OWNER_ID);
+        service.streamUserEntry(CHAT_ID, "question", false, 5, 0.5);
+        assertThat(streamed.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(service.cancelGeneration(CHAT_ID)).isTrue();
+        generation.join(5000);
+
+        assertThat(generation.isAlive()).isFalse();
+        assertThat(savedEntries()).extracting(ChatEntry::getContent).containsExactly("question", "partial answer");
+        // The memory advisor only records complete answers, so the window is reloaded from the entries
+        verify(chatMemory).clear(String.valueOf(CHAT_ID));
+        assertThat(service.cancelGeneration(CHAT_ID)).isFalse();
+    }
+
+    @Test
+    void newQuestionStopsTheAnswerStillBeingGenerated() throws Exception {
+        when(response.content()).thenReturn(streaming("first answer"));
+        asUser(OWNER_ID);
+        service.streamUserEntry(CHAT_ID, "first", false, 5, 0.5);
+        assertThat(streamed.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread first = generation;
+
+        when(response.content()).thenReturn(Flux.just("second answer"));
+        service.streamUserEntry(CHAT_ID, "second", false, 5, 0.5);
+        first.join(5000);
+        generation.join(5000);
+
+        assertThat(first.isAlive()).isFalse();
+        verify(chatEntryRepository, timeout(5000).times(4)).save(any());
+        assertThat(savedEntries()).extracting(ChatEntry::getContent)
+                .containsExactlyInAnyOrder("first", "second", "first answer", "second answer");
+    }
+
+    // Emits the tokens, then keeps generating without an end; streamed opens once all were passed on
+    private Flux<String> streaming(String... parts) {
+        return Flux.fromArray(parts)
+                .concatWith(Flux.<String>never().doOnSubscribe(subscription -> streamed.countDown()));
+    }
+
+    private void asUser(int userId) {
+        when(apiUtils.getUserIdFromAuthentication()).thenReturn(userId);
+    }
+
+    private List<ChatEntry> savedEntries() {
+        ArgumentCaptor<ChatEntry> entries = ArgumentCaptor.forClass(ChatEntry.class);
+        verify(chatEntryRepository, atLeastOnce()).save(entries.capture());
+        return entries.getAllValues();
+    }
+}
@@ -0,0 +1,111 @@
+package com.balex.rag.service.impl;
+
+import com.balex.rag.config.RagVectorIndexProperties;
+import com.balex.rag.model.enums.VectorIndexType;
+import com.balex.rag.repo.VectorIndexRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VectorIndexServiceImplTest {
+
+    private static final String HNSW = "vector_store_hnsw_index";
+
+    private final VectorIndexRepository repository = mock(VectorIndexRepository.class);
+    private final VectorIndexServiceImpl service = new VectorIndexServiceImpl(repository, new RagVectorIndexProperties(
+            VectorIndexType.HNSW, 16, 64, 100, false, true, Duration.ofSeconds(5)));
+
+    @Test
+    void indexWithTheConfiguredOptionsIsKept() {
+        // Option order in pg_class.reloptions does not matter
+        when(repository.findIndexOptions(HNSW, "hnsw")).thenReturn(Optional.of(List.of("ef_construction=64", "m=16")));
+
+        service.ensureIndex();
+
+        verify(repository, after(200).never()).createIndexConcurrently(anyString(), anyString(), anyList());
+        verify(repository, never()).dropIndexConcurrently(anyString());
+    }
+
+    @Test
+    void changedOptionsRebuildTheIndexBehindTheLiveOne() {
+        when(repository.findIndexOptions(HNSW, "hnsw")).thenReturn(Optional.of(List.of("m=8", "ef_construction=64")));
+
+        service.ensureIndex();
+
+        verify(repository, timeout(5000)).dropIndexConcurrently("vector_store_ivfflat_index");
+        InOrder order = inOrder(repository);
+        order.verify(repository).dropIndexConcurrently(HNSW + "_new");
+        order.verify(repository).dropIndexConcurrently(HNSW + "_old");
+        order.verify(repository).createIndexConcurrently(HNSW + "_new", "hnsw", List.of("m=16", "ef_construction=64"));
+        order.verify(repository).swapIndex(HNSW, HNSW + "_new", HNSW + "_old");
+        order.verify(repository).dropIndexConcurrently(HNSW + "_old");
+        order.verify(repository).dropIndexConcurrently("vector_store_ivfflat_index");
+        // The live index is only ever renamed, never dropped
+        verify(repository, never()).dropIndexConcurrently(HNSW);
+    }
+
+    @Test
+    void missingIndexIsBuilt() {
+        when(repository.findIndexOptions(HNSW, "hnsw")).thenReturn(Optional.empty());
+
+        service.ensureIndex();
+
+        verify(repository, timeout(5000)).swapIndex(HNSW, HNSW + "_new", HNSW + "_old");
+    }
+
+    @Test
+    void failedBuildLeavesTheLiveIndexAlone() {
+        doThrow(new IllegalStateException("out of maintenance_work_mem"))
+                .when(repository).createIndexConcurrently(anyString(), anyString(), anyList());
+
+        assertThat(service.rebuildIndex()).isTrue();
+
+        verify(repository, timeout(5000)).createIndexConcurrently(anyString(), anyString(), anyList());
+        verify(repository, after(200).never()).swapIndex(anyString(), anyString(), anyString());
+        verify(repository, never()).dropIndexConcurrently(HNSW);
+    }
+
+    @Test
+    void onlyOneBuildRunsAtATime() throws Exception {
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(call -> {
+            creating.countDown();
+            release.await();
+            return null;
+        }).when(repository).createIndexConcurrently(anyString(), anyString(), anyList());
+
+        assertThat(service.rebuildIndex()).isTrue();
+        assertThat(creating.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(service.rebuildIndex()).isFalse();
+
+        release.countDown();
+        verify(repository, timeout(5000)).dropIndexConcurrently("vector_store_ivfflat_index");
+        // The build thread clears its flag right after its last repository call
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!service.rebuildIndex()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        verify(repository, timeout(5000).times(2)).swapIndex(any(), any(), any());
+    }
+}
@@ -0,0 +1,63 @@
+package com.balex.rag.service.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveBatchSizeTest {
+
+    private static final long FAST = Duration.ofMillis(100).toNanos();
+    private static final long SLOW = Duration.ofSeconds(5).toNanos();
+
+    private final AdaptiveBatchSize batchSize = new AdaptiveBatchSize(16, 4, 32, Duration.ofSeconds(1));
+
+    @Test
+    void fastFullBatchesGrowByTheMinimum() {
+        batchSize.onSuccess(16, FAST);
+        assertThat(batchSize.current()).isEqualTo(20);
+
+        batchSize.onSuccess(20, FAST);
+        assertThat(batchSize.current()).isEqualTo(24);
+    }
+
+    @Test
+    void partialBatchesDoNotGrow() {
+        batchSize.onSuccess(10, FAST);
+
+        assertThat(batchSize.current()).isEqualTo(16);
+    }
+
+    @Test
+    void slowBatchesHalve() {
+        batchSize.onSuccess(16, SLOW);
+
+        assertThat(batchSize.current()).isEqualTo(8);
+    }
+
+    @Test
+    void failuresHalveDownToTheMinimum() {
+        batchSize.onFailure();
+        assertThat(batchSize.current()).isEqualTo(8);
+
+        batchSize.onFailure();
+        batchSize.onFailure();
+        assertThat(batchSize.current()).isEqualTo(4);
+    }
+
+    @Test
+    void growthStopsAtTheMaximum() {
+        for (int i = 0; i < 10; i++) {
+            batchSize.onSuccess(batchSize.current(), FAST);
+        }
+
+        assertThat(batchSize.current()).isEqualTo(32);
+    }
+
+    @Test
+    void clampsTheInitialSize() {
+        assertThat(new AdaptiveBatchSize(100, 4, 32, Duration.ofSeconds(1)).current()).isEqualTo(32);
+        assertThat(new AdaptiveBatchSize(0, 0, 0, Duration.ofSeconds(1)).current()).isEqualTo(1);
+    }
+}
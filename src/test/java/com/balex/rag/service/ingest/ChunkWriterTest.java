@@ -0,0 +1,79 @@
+package com.balex.rag.service.ingest;
+
+import com.balex.rag.advisors.rag.Bm25CorpusIndex;
+import com.balex.rag.advisors.rag.Bm25TermVector;
+import com.balex.rag.cache.RetrievalCache;
+import com.balex.rag.model.IngestionJobFile;
+import com.balex.rag.model.LoadedDocument;
+import com.balex.rag.repo.DocumentRepository;
+import com.balex.rag.repo.IngestionJobRepository;
+import com.balex.rag.repo.LoadedDocumentChunkRepository;
+import com.balex.rag.repo.VectorStoreRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChunkWriterTest {
+
+    private final VectorStoreRepository vectorStoreRepository = mock(VectorStoreRepository.class);
+    private final DocumentRepository documentRepository = mock(DocumentRepository.class);
+    private final Bm25CorpusIndex corpusIndex = new Bm25CorpusIndex();
+    private final ChunkWriter writer = new ChunkWriter(vectorStoreRepository, documentRepository,
+            mock(LoadedDocumentChunkRepository.class), corpusIndex, mock(RetrievalCache.class),
+            mock(IngestionJobRepository.class));
+
+    @Test
+    void pendingWindowsStayOutOfTheCorpusStatistics() {
+        Document chunk = chunk("c1", "postgres index tuning");
+
+        writer.writeWindow(new EmbeddedWindow(window(chunk), List.of(new float[]{1f})));
+
+        assertThat(corpusIndex.totalDocs()).isZero();
+    }
+
+    @Test
+    void completingAFileAddsItsPublishedChunks() {
+        FileIngestion file = ingestion();
+        when(vectorStoreRepository.publishIngestion("ingestion-1"))
+                .thenReturn(List.of(chunk("c1", "postgres index tuning"), chunk("c2", "postgres backup")));
+        when(documentRepository.save(any(LoadedDocument.class)))
+                .thenAnswer(call -> {
+                    LoadedDocument saved = call.getArgument(0);
+                    saved.setId(5L);
+                    return saved;
+                });
+
+        assertThat(writer.complete(file)).isTrue();
+
+        assertThat(corpusIndex.totalDocs()).isEqualTo(2);
+        assertThat(corpusIndex.docFreq("postgr")).isEqualTo(2);
+        assertThat(corpusIndex.avgDocLength()).isEqualTo(2.5);
+    }
+
+    private static ChunkWindow window(Document chunk) {
+        return new ChunkWindow(ingestion(), 0, List.of(chunk));
+    }
+
+    private static FileIngestion ingestion() {
+        IngestionJobFile jobFile = IngestionJobFile.builder()
+                .id(1L)
+                .filename("notes.txt")
+                .ingestionId("ingestion-1")
+                .build();
+        return new FileIngestion(jobFile, "content-hash", "txt", 7L, null, List.of());
+    }
+
+    private static Document chunk(String id, String text) {
+        Map<String, Object> metadata = new HashMap<>();
+        Bm25TermVector.of(text).writeTo(metadata);
+        return new Document(id, text, metadata);
+    }
+}
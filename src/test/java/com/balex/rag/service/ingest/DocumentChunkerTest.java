@@ -0,0 +1,70 @@
+package com.balex.rag.service.ingest;
+
+import com.balex.rag.config.RagIngestionProperties;
+import com.balex.rag.model.IngestionJobFile;
+import com.balex.rag.repo.DocumentRepository;
+import com.balex.rag.repo.LoadedDocumentChunkRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DocumentChunkerTest {
+
+    @TempDir
+    Path spoolDir;
+
+    private final RagIngestionProperties properties = mock(RagIngestionProperties.class);
+    private final DocumentChunker chunker = new DocumentChunker(
+            mock(DocumentRepository.class), mock(LoadedDocumentChunkRepository.class), properties);
+
+    @Test
+    void windowEdgesOnWhitespaceKeepWordsApart() throws Exception {
+        // 8-char words fill the 8192-char read buffer exactly, so every window ends on a space
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            text.append(String.format("w%06d ", i));
+        }
+        List<Document> chunks = split(text.toString(), 50);
+
+        assertThat(chunks).hasSizeGreaterThan(4);
+        assertThat(chunks).extracting(Document::getText).allSatisfy(chunk -> assertThat(text).contains(chunk));
+        assertThat(chunks.getFirst().getText()).startsWith("w000000 ");
+        assertThat(chunks.getLast().getText()).endsWith(" w003999");
+    }
+
+    @Test
+    void shortTextIsOneWindow() throws Exception {
+        List<Document> chunks = split("just a few words", 50);
+
+        assertThat(chunks).extracting(Document::getText).containsExactly("just a few words");
+    }
+
+    private List<Document> split(String text, int chunkSize) throws Exception {
+        Path spooled = spoolDir.resolve("0");
+        Files.writeString(spooled, text);
+        when(properties.windowChars()).thenReturn(0);
+        ReflectionTestUtils.setField(chunker, "chunkSize", chunkSize);
+
+        IngestionJobFile jobFile = IngestionJobFile.builder()
+                .id(1L)
+                .filename("notes.txt")
+                .spoolPath(spooled.toString())
+                .ingestionId("ingestion-1")
+                .build();
+        FileIngestion ingestion = new FileIngestion(jobFile, "content-hash", "txt", 7L, null, List.of());
+
+        List<Document> chunks = new ArrayList<>();
+        chunker.split(jobFile, ingestion, chunks::addAll);
+        return chunks;
+    }
+}
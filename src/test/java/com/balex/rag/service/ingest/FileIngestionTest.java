@@ -0,0 +1,100 @@
+package com.balex.rag.service.ingest;
+
+import com.balex.rag.model.ChunkManifestEntry;
+import com.balex.rag.model.IngestionJobFile;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileIngestionTest {
+
+    @Test
+    void firstUploadStoresEveryChunk() {
+        FileIngestion ingestion = ingestion("ingestion-1", List.of());
+
+        List<Document> changed = ingestion.retainChanged(List.of(chunk("a", "h-a"), chunk("b", "h-b")));
+
+        assertThat(changed).extracting(Document::getText).containsExactly("a", "b");
+        assertThat(ingestion.manifest()).extracting(ChunkManifestEntry::chunkIndex).containsExactly(0, 1);
+        assertThat(ingestion.manifest()).extracting(ChunkManifestEntry::chunkId)
+                .containsExactlyElementsOf(changed.stream().map(Document::getId).toList());
+        assertThat(ingestion.removedChunkIds()).isEmpty();
+    }
+
+    @Test
+    void reuploadKeepsUnchangedChunksAndRemovesDroppedOnes() {
+        FileIngestion ingestion = ingestion("ingestion-2", List.of(
+                new ChunkManifestEntry(0, "old-a", "h-a"),
+                new ChunkManifestEntry(1, "old-b", "h-b"),
+                new ChunkManifestEntry(2, "old-c", "h-c")));
+
+        List<Document> changed = ingestion.retainChanged(List.of(chunk("a", "h-a"), chunk("new", "h-new"), chunk("c", "h-c")));
+
+        assertThat(changed).extracting(Document::getText).containsExactly("new");
+        assertThat(ingestion.manifest()).extracting(ChunkManifestEntry::chunkId)
+                .containsExactly("old-a", changed.getFirst().getId(), "old-c");
+        assertThat(ingestion.removedChunkIds()).containsExactly("old-b");
+    }
+
+    @Test
+    void duplicateChunksAreMatchedOneForOne() {
+        FileIngestion ingestion = ingestion("ingestion-3", List.of(
+                new ChunkManifestEntry(0, "old-1", "h-dup"),
+                new ChunkManifestEntry(1, "old-2", "h-dup")));
+
+        List<Document> changed = ingestion.retainChanged(List.of(
+                chunk("dup", "h-dup"), chunk("dup", "h-dup"), chunk("dup", "h-dup")));
+
+        assertThat(changed).hasSize(1);
+        assertThat(ingestion.manifest()).extracting(ChunkManifestEntry::chunkId)
+                .containsExactly("old-1", "old-2", changed.getFirst().getId());
+        assertThat(ingestion.removedChunkIds()).isEmpty();
+    }
+
+    @Test
+    void chunksStoredWithoutHashAreAlwaysReplaced() {
+        FileIngestion ingestion = ingestion("ingestion-4", List.of(
+                new ChunkManifestEntry(0, "legacy-a", null),
+                new ChunkManifestEntry(1, "old-b", "h-b")));
+
+        List<Document> changed = ingestion.retainChanged(List.of(chunk("a", null), chunk("b", "h-b")));
+
+        assertThat(changed).extracting(Document::getText).containsExactly("a");
+        assertThat(ingestion.manifest()).extracting(ChunkManifestEntry::chunkHash).containsExactly(null, "h-b");
+        assertThat(ingestion.removedChunkIds()).containsExactly("legacy-a");
+    }
+
+    @Test
+    void newChunkIdsDependOnlyOnIngestionAndPosition() {
+        List<Document> first = ingestion("ingestion-5", List.of()).retainChanged(List.of(chunk("a", "h-a")));
+        List<Document> retried = ingestion("ingestion-5", List.of()).retainChanged(List.of(chunk("a", "h-a")));
+        List<Document> other = ingestion("ingestion-6", List.of()).retainChanged(List.of(chunk("a", "h-a")));
+
+        assertThat(retried.getFirst().getId()).isEqualTo(first.getFirst().getId());
+        assertThat(other.getFirst().getId()).isNotEqualTo(first.getFirst().getId());
+    }
+
+    private static FileIngestion ingestion(String ingestionId, List<ChunkManifestEntry> previousManifest) {
+        IngestionJobFile jobFile = IngestionJobFile.builder()
+                .id(1L)
+                .filename("notes.txt")
+                .ingestionId(ingestionId)
+                .build();
+        return new FileIngestion(jobFile, "content-hash", "txt", 7L,
+                previousManifest.isEmpty() ? null : 3L, new ArrayList<>(previousManifest));
+    }
+
+    private static Document chunk(String text, String chunkHash) {
+        Map<String, Object> metadata = new HashMap<>();
+        if (chunkHash != null) {
+            metadata.put(DocumentChunker.CHUNK_HASH_FIELD_NAME, chunkHash);
+        }
+        return new Document(text, metadata);
+    }
+}
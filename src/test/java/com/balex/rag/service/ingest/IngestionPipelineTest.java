@@ -0,0 +1,316 @@
+package com.balex.rag.service.ingest;
+
+import com.balex.rag.config.RagIngestionProperties;
+import com.balex.rag.model.IngestionJobFile;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestionPipelineTest {
+
+    private static final long USER_ID = 7L;
+
+    private final DocumentChunker chunker = mock(DocumentChunker.class);
+    private final ChunkEmbedder embedder = mock(ChunkEmbedder.class);
+    private final ChunkWriter writer = mock(ChunkWriter.class);
+    private final RagIngestionProperties properties = mock(RagIngestionProperties.class);
+    private final IngestionPipeline pipeline = new IngestionPipeline(chunker, embedder, writer, properties);
+
+    private final RecordingListener listener = new RecordingListener();
+    private final List<EmbeddedWindow> written = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void windowsPassThroughEmbedAndWriteBeforeTheFileCompletes() throws Exception {
+        configure(1, 2);
+        IngestionJobFile file = jobFile();
+        FileIngestion ingestion = producing(file, 3, 2);
+        when(writer.complete(ingestion)).thenReturn(true);
+
+        pipeline.run(List.of(file), USER_ID, listener, () -> false);
+
+        assertThat(written).extracting(window -> window.window().index()).containsExactly(0, 1, 2);
+        for (EmbeddedWindow window : written) {
+            List<Document> chunks = window.window().chunks();
+            assertThat(window.embeddings()).hasSameSizeAs(chunks);
+            for (int i = 0; i < chunks.size(); i++) {
+                assertThat(window.embeddings().get(i)).containsExactly(embeddingOf(chunks.get(i).getText()));
+            }
+        }
+
+        InOrder order = inOrder(writer);
+        order.verify(writer, times(3)).writeWindow(any());
+        order.verify(writer).complete(ingestion);
+        verify(writer, never()).discard(any());
+
+        // Stages run concurrently, so only the file events have a fixed place
+        assertThat(listener.events).first().isEqualTo("started notes.txt");
+        assertThat(listener.events).last().isEqualTo("finished notes.txt stored");
+        assertThat(listener.events).containsExactlyInAnyOrder(
+                "started notes.txt", "queued 2", "queued 2", "queued 2",
+                "written 2", "written 2", "written 2", "finished notes.txt stored");
+    }
+
+    @Test
+    void producerWaitsWhileTheQueueToEmbedIsFull() throws Exception {
+        configure(1, 1);
+        IngestionJobFile file = jobFile();
+        producing(file, 6, 1);
+
+        CountDownLatch embedding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(embedder.embedBatch(anyList())).thenAnswer(call -> {
+            embedding.countDown();
+            release.await();
+            return embeddings(call.getArgument(0));
+        });
+
+        Thread run = Thread.ofVirtual().start(() -> pipeline.run(List.of(file), USER_ID, listener, () -> false));
+        assertThat(embedding.await(5, TimeUnit.SECONDS)).isTrue();
+        // One window is being embedded and one fills the queue; the producer blocks on the third
+        Thread.sleep(200);
+        assertThat(listener.queued.get()).isEqualTo(2);
+
+        release.countDown();
+        run.join(5000);
+
+        assertThat(run.isAlive()).isFalse();
+        assertThat(listener.queued.get()).isEqualTo(6);
+        assertThat(written).hasSize(6);
+    }
+
+    @Test
+    void failedWriteDiscardsTheCommittedWindows() throws Exception {
+        configure(1, 2);
+        IngestionJobFile file = jobFile();
+        FileIngestion ingestion = producing(file, 3, 2);
+        AtomicInteger writes = new AtomicInteger();
+        doAnswer(call -> {
+            if (writes.incrementAndGet() == 2) {
+                throw new IllegalStateException("vector_store unavailable");
+            }
+            written.add(call.getArgument(0));
+            return null;
+        }).when(writer).writeWindow(any());
+
+        assertThatThrownBy(() -> pipeline.run(List.of(file), USER_ID, listener, () -> false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("vector_store unavailable");
+
+        assertThat(written).hasSize(1);
+        verify(writer, never()).complete(any());
+        verify(writer).discard(ingestion);
+        assertThat(listener.events).doesNotContain("finished notes.txt stored");
+    }
+
+    @Test
+    void duplicateFileIsSkippedWithoutReachingTheLaterStages() throws Exception {
+        configure(1, 2);
+        IngestionJobFile file = jobFile();
+        when(chunker.open(file, USER_ID)).thenReturn(null);
+
+        pipeline.run(List.of(file), USER_ID, listener, () -> false);
+
+        verify(writer).skip(file.getId());
+        verify(embedder, never()).embedBatch(anyList());
+        verify(writer, never()).writeWindow(any());
+        assertThat(listener.events).containsExactly("started notes.txt", "finished notes.txt skipped");
+    }
+
+    @Test
+    void storedAndRepeatedChunksAreNotEmbeddedAgain() throws Exception {
+        configure(1, 10);
+        // Both windows go into one batch, which is flushed when the file ends
+        when(properties.embedLinger()).thenReturn(Duration.ofMinutes(1));
+        IngestionJobFile file = jobFile();
+        FileIngestion ingestion = producingTexts(file,
+                List.of(List.of("stored elsewhere", "new text"), List.of("new text", "other text")));
+        when(writer.complete(ingestion)).thenReturn(true);
+        float[] storedEmbedding = {42f};
+        List<Set<String>> lookups = new ArrayList<>();
+        when(embedder.findStored(anyCollection())).thenAnswer(call -> {
+            Collection<String> hashes = call.getArgument(0);
+            // The batcher reuses the collection once the lookup returns
+            lookups.add(Set.copyOf(hashes));
+            return hashes.contains(hashOf("stored elsewhere"))
+                    ? Map.of(hashOf("stored elsewhere"), storedEmbedding)
+                    : Map.of();
+        });
+
+        pipeline.run(List.of(file), USER_ID, listener, () -> false);
+
+        // Repeated text is looked up and embedded once
+        assertThat(lookups).containsExactly(Set.of(hashOf("stored elsewhere"), hashOf("new text"), hashOf("other text")));
+        verify(embedder).embedBatch(List.of("new text", "other text"));
+        assertThat(written).hasSize(2);
+        assertThat(written.get(0).embeddings().get(0)).isSameAs(storedEmbedding);
+        assertThat(written.get(0).embeddings().get(1)).containsExactly(embeddingOf("new text"));
+        assertThat(written.get(1).embeddings().get(0)).containsExactly(embeddingOf("new text"));
+        assertThat(written.get(1).embeddings().get(1)).containsExactly(embeddingOf("other text"));
+    }
+
+    @Test
+    void resumedFileOnlyWritesTheWindowsPastItsCheckpoint() throws Exception {
+        configure(1, 2);
+        IngestionJobFile file = jobFile(2);
+        FileIngestion ingestion = producing(file, 4, 2);
+        when(writer.complete(ingestion)).thenReturn(true);
+
+        pipeline.run(List.of(file), USER_ID, listener, () -> false);
+
+        assertThat(written).extracting(window -> window.window().index()).containsExactly(2, 3);
+        assertThat(listener.queued.get()).isEqualTo(4);
+        verify(writer).checkpoint(ingestion, 3);
+        verify(writer).complete(ingestion);
+        // The committed windows are not written again but still make up the manifest
+        assertThat(ingestion.manifest()).hasSize(8);
+    }
+
+    @Test
+    void fileResumedPastItsLastWindowCompletesWithoutWriting() throws Exception {
+        configure(1, 2);
+        IngestionJobFile file = jobFile(3);
+        FileIngestion ingestion = producing(file, 3, 2);
+        when(writer.complete(ingestion)).thenReturn(true);
+
+        pipeline.run(List.of(file), USER_ID, listener, () -> false);
+
+        verify(embedder, never()).embedBatch(anyList());
+        verify(writer, never()).writeWindow(any());
+        verify(writer).complete(ingestion);
+        assertThat(ingestion.manifest()).hasSize(6);
+        assertThat(listener.events).containsExactly("started notes.txt", "finished notes.txt stored");
+    }
+
+    private void configure(int queueCapacity, int batchSize) {
+        when(properties.prepareParallelism()).thenReturn(1);
+        when(properties.embedParallelism()).thenReturn(1);
+        when(properties.writeParallelism()).thenReturn(1);
+        when(properties.queueCapacity()).thenReturn(queueCapacity);
+        when(properties.embedLinger()).thenReturn(Duration.ofMillis(10));
+        when(embedder.batchSize()).thenReturn(batchSize);
+        when(embedder.findStored(anyCollection())).thenReturn(Map.of());
+        when(embedder.embedBatch(anyList())).thenAnswer(call -> embeddings(call.getArgument(0)));
+        doAnswer(call -> written.add(call.getArgument(0))).when(writer).writeWindow(any());
+    }
+
+    /**
+     * Makes the chunker split the file into {@code windows} windows of {@code chunksPerWindow} chunks.
+     */
+    private FileIngestion producing(IngestionJobFile file, int windows, int chunksPerWindow) throws Exception {
+        FileIngestion ingestion = new FileIngestion(file, "content-hash", "txt", USER_ID, null, List.of());
+        when(chunker.open(file, USER_ID)).thenReturn(ingestion);
+        doAnswer(call -> {
+            DocumentChunker.WindowSink sink = call.getArgument(2);
+            for (int w = 0; w < windows; w++) {
+                List<Document> chunks = new ArrayList<>();
+                for (int c = 0; c < chunksPerWindow; c++) {
+                    chunks.add(new Document("window " + w + " chunk " + c));
+                }
+                sink.accept(chunks);
+            }
+            return null;
+        }).when(chunker).split(eq(file), eq(ingestion), any());
+        return ingestion;
+    }
+
+    /**
+     * Makes the chunker emit the given chunk texts per window, each with its chunk hash.
+     */
+    private FileIngestion producingTexts(IngestionJobFile file, List<List<String>> windows) throws Exception {
+        FileIngestion ingestion = new FileIngestion(file, "content-hash", "txt", USER_ID, null, List.of());
+        when(chunker.open(file, USER_ID)).thenReturn(ingestion);
+        doAnswer(call -> {
+            DocumentChunker.WindowSink sink = call.getArgument(2);
+            for (List<String> texts : windows) {
+                List<Document> chunks = new ArrayList<>();
+                for (String text : texts) {
+                    Map<String, Object> metadata = new HashMap<>();
+                    metadata.put(DocumentChunker.CHUNK_HASH_FIELD_NAME, hashOf(text));
+                    chunks.add(new Document(text, metadata));
+                }
+                sink.accept(chunks);
+            }
+            return null;
+        }).when(chunker).split(eq(file), eq(ingestion), any());
+        return ingestion;
+    }
+
+    private static String hashOf(String text) {
+        return "hash of " + text;
+    }
+
+    private static IngestionJobFile jobFile() {
+        return jobFile(0);
+    }
+
+    private static IngestionJobFile jobFile(int windowsDone) {
+        return IngestionJobFile.builder()
+                .id(1L)
+                .filename("notes.txt")
+                .ingestionId("ingestion-1")
+                .windowsDone(windowsDone)
+                .build();
+    }
+
+    private static List<float[]> embeddings(List<String> texts) {
+        return texts.stream().map(IngestionPipelineTest::embeddingOf).toList();
+    }
+
+    private static float[] embeddingOf(String text) {
+        return new float[]{text.hashCode()};
+    }
+
+    private static final class RecordingListener implements IngestionListener {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger queued = new AtomicInteger();
+
+        @Override
+        public void fileStarted(String filename) {
+            events.add("started " + filename);
+        }
+
+        @Override
+        public void fileFinished(String filename, boolean stored) {
+            events.add("finished " + filename + (stored ? " stored" : " skipped"));
+        }
+
+        @Override
+        public void chunksQueued(int count) {
+            queued.addAndGet(count);
+            events.add("queued " + count);
+        }
+
+        @Override
+        public void chunksWritten(int count) {
+            events.add("written " + count);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.balex.rag.service.stream;
+
+import com.balex.rag.config.RagChatStreamProperties;
+import com.balex.rag.model.enums.SlowClientPolicy;
+import com.balex.rag.service.stream.TextDeltaSseWriter.TextDelta;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextDeltaSseWriterTest {
+
+    private static final List<String> TOKENS = IntStream.range(0, 100).mapToObj(i -> i + " ").toList();
+    private static final String ANSWER = String.join("", TOKENS);
+
+    @Test
+    void tokensAreCoalescedIntoFramesOfAtMostMaxFrameTokens() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        TextDeltaSseWriter writer = new TextDeltaSseWriter(emitter, properties(4, Duration.ofMinutes(1), 64,
+                SlowClientPolicy.DROP));
+
+        writer.write(Flux.just("a", "b", "c", "d", "e", "f", "g", "h", "i", "j"));
+
+        assertThat(emitter.frames).containsExactly("abcd", "efgh", "ij");
+        assertThat(writer.text()).isEqualTo("abcdefghij");
+        assertThat(writer.isCancelled()).isFalse();
+    }
+
+    @Test
+    void partialFrameIsSentOnceTheFrameIntervalPasses() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        TextDeltaSseWriter writer = new TextDeltaSseWriter(emitter, properties(32, Duration.ofMillis(50), 64,
+                SlowClientPolicy.DROP));
+
+        writer.write(Flux.just("a", "b").concatWith(Mono.delay(Duration.ofMillis(500)).thenReturn("c")));
+
+        assertThat(emitter.frames).containsExactly("ab", "c");
+    }
+
+    @Test
+    void dropPolicySkipsFramesForASlowClientButKeepsTheWholeText() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        TextDeltaSseWriter writer = new TextDeltaSseWriter(emitter, properties(1, Duration.ofMinutes(1), 2,
+                SlowClientPolicy.DROP));
+
+        // A synchronous source produces every frame before the first one is sent
+        writer.write(Flux.fromIterable(TOKENS));
+
+        assertThat(writer.isCancelled()).isFalse();
+        assertThat(emitter.frames).hasSizeLessThan(TOKENS.size()).isSubsetOf(TOKENS);
+        // The newest frames are kept, so the client sees where the answer ended
+        assertThat(emitter.frames).last().isEqualTo(TOKENS.getLast());
+        assertThat(writer.text()).isEqualTo(ANSWER);
+    }
+
+    @Test
+    void cancelPolicyStopsTheGenerationForASlowClient() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        TextDeltaSseWriter writer = new TextDeltaSseWriter(emitter, properties(1, Duration.ofMinutes(1), 2,
+                SlowClientPolicy.CANCEL));
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+
+        writer.write(Flux.fromIterable(TOKENS).doOnCancel(() -> upstreamCancelled.set(true)));
+
+        assertThat(writer.isCancelled()).isTrue();
+        assertThat(upstreamCancelled).isTrue();
+        assertThat(writer.text()).isNotEqualTo(ANSWER);
+        assertThat(ANSWER).startsWith(writer.text());
+    }
+
+    @Test
+    void failedSendCancelsTheUpstream() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.failing = true;
+        TextDeltaSseWriter writer = new TextDeltaSseWriter(emitter, properties(1, Duration.ofMinutes(1), 64,
+                SlowClientPolicy.DROP));
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+
+        writer.write(Flux.fromIterable(TOKENS)
+                .delayElements(Duration.ofMillis(1))
+                .doOnCancel(() -> upstreamCancelled.set(true)));
+
+        assertThat(writer.isCancelled()).isTrue();
+        assertThat(upstreamCancelled).isTrue();
+
+        emitter.failing = false;
+        writer.send("entry", new TextDelta("after cancel"));
+        assertThat(emitter.frames).isEmpty();
+    }
+
+    private static RagChatStreamProperties properties(int maxFrameTokens, Duration frameInterval,
+                                                      int maxPendingFrames, SlowClientPolicy policy) {
+        return new RagChatStreamProperties(frameInterval, maxFrameTokens, maxPendingFrames, policy);
+    }
+
+    // Records the text of each delta instead of writing to a response
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final List<String> frames = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean failing;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            for (DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof TextDelta delta) {
+                    frames.add(delta.text());
+                }
+            }
+        }
+    }
+}